@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.szczesnaj.customersapp.export.CustomerCsvWriter;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * {@code GET /customers/export} with the output discarded: the CSV writer alone
+ * and together with reading customers from the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvExportBenchmark {
+    @Param("10000")
+    int customers;
+
+    private List<Customer> sampleCustomers;
+
+    @Setup
+    public void setUp() {
+        sampleCustomers = LongStream.rangeClosed(1, customers)
+                .mapToObj(SampleCustomers::customer)
+                .toList();
+    }
+
+    @Benchmark
+    public long writeCsv() throws IOException {
+        try (CustomerCsvWriter csvWriter = new CustomerCsvWriter(Writer.nullWriter())) {
+            csvWriter.writeHeader();
+            sampleCustomers.forEach(csvWriter::write);
+            return csvWriter.getRowsWritten();
+        }
+    }
+
+    @Benchmark
+    public long exportCustomers(CustomersDatabase database) throws IOException {
+        try (CustomerCsvWriter csvWriter = new CustomerCsvWriter(Writer.nullWriter())) {
+            csvWriter.writeHeader();
+            return database.customerService.exportCustomers(csvWriter::write);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.CustomerSummary;
+import pl.szczesnaj.customersapp.service.CustomerCursor;
+import pl.szczesnaj.customersapp.service.CustomerPage;
+import pl.szczesnaj.customersapp.service.CustomerService;
+import pl.szczesnaj.customersapp.service.CustomerSlice;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CustomerServiceBenchmark {
+    private final AtomicLong nextNewCustomer = new AtomicLong();
+    private int deepPage;
+    private String deepCursor;
+
+    @Setup
+    public void setUp(CustomersDatabase database) {
+        nextNewCustomer.set(database.customers + 1L);
+        deepPage = database.customers / CustomerService.PAGE_SIZE - 1;
+        deepCursor = CustomerCursor.encode(database.customers - CustomerService.PAGE_SIZE);
+    }
+
+    /**
+     * Served from the cache after the first lookup of each PESEL number.
+     */
+    @Benchmark
+    public Optional<CustomerDetails> getCustomerByPeselNum(CustomersDatabase database) {
+        return database.customerService.getCustomerByPeselNum(randomPeselNumber(database));
+    }
+
+    @Benchmark
+    public Optional<CustomerDetails> findCustomerByPeselNumUncached(CustomersDatabase database) {
+        return database.customerRepository.findCustomerDetailsByPeselNum(randomPeselNumber(database));
+    }
+
+    @Benchmark
+    public CustomerPage<CustomerSummary> getCustomersFirstPage(CustomersDatabase database) {
+        return database.customerService.getCustomers(0, Sort.Direction.ASC);
+    }
+
+    @Benchmark
+    public CustomerPage<CustomerSummary> getCustomersDeepPage(CustomersDatabase database) {
+        return database.customerService.getCustomers(deepPage, Sort.Direction.ASC);
+    }
+
+    @Benchmark
+    public CustomerSlice<CustomerSummary> getCustomersDeepKeyset(CustomersDatabase database) {
+        return database.customerService.getCustomers(deepCursor, CustomerService.PAGE_SIZE, Sort.Direction.ASC, false);
+    }
+
+    @Benchmark
+    public Optional<Customer> addCustomer(CustomersDatabase database) {
+        return database.customerService.addCustomer(SampleCustomers.customer(nextNewCustomer.getAndIncrement()));
+    }
+
+    @Benchmark
+    public Optional<Customer> addCustomerDuplicate(CustomersDatabase database) {
+        long existing = ThreadLocalRandom.current().nextLong(1, database.customers + 1L);
+        return database.customerService.addCustomer(SampleCustomers.customer(existing));
+    }
+
+    private String randomPeselNumber(CustomersDatabase database) {
+        return SampleCustomers.peselNumber(ThreadLocalRandom.current().nextLong(1, database.customers + 1L));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import pl.szczesnaj.customersapp.CustomersappApplication;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.repository.CustomerRepository;
+import pl.szczesnaj.customersapp.service.CustomerService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Customers app without the web server, running on an embedded H2 database
+ * seeded with {@code customers} customers, PESEL numbers 1 to {@code customers}.
+ */
+@State(Scope.Benchmark)
+public class CustomersDatabase {
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    @Param("10000")
+    int customers;
+
+    ConfigurableApplicationContext context;
+    CustomerService customerService;
+    CustomerRepository customerRepository;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(CustomersappApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmarks;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=warn");
+        customerService = context.getBean(CustomerService.class);
+        customerRepository = context.getBean(CustomerRepository.class);
+
+        for (int from = 1; from <= customers; from += SEED_BATCH_SIZE) {
+            List<Customer> batch = new ArrayList<>(SEED_BATCH_SIZE);
+            for (int i = from; i < Math.min(from + SEED_BATCH_SIZE, customers + 1); i++) {
+                batch.add(SampleCustomers.customer(i));
+            }
+            customerService.addCustomers(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.benchmarks;
+
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+
+final class SampleCustomers {
+
+    private SampleCustomers() {
+    }
+
+    /**
+     * @return customer with contacts and PESEL number derived from the given number
+     */
+    static Customer customer(long number) {
+        CommunicationMethods contacts = new CommunicationMethods();
+        contacts.setEmailAddress("customer" + number + "@example.com");
+        contacts.setResidenceAddress("residenceAddress " + number);
+        contacts.setPrivatePhoneNumber("600" + String.format("%06d", number % 1_000_000));
+
+        Customer customer = new Customer();
+        customer.setPeselNumber(peselNumber(number));
+        customer.setName("Izabela");
+        customer.setSurname("Czajkowska");
+        customer.setContacts(contacts);
+        return customer;
+    }
+
+    static String peselNumber(long number) {
+        return String.format("%011d", number);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.CustomerSummary;
+import pl.szczesnaj.customersapp.service.CustomerPage;
+import pl.szczesnaj.customersapp.service.CustomerService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * JSON responses of {@code GET /customers/{peselNum}} and {@code GET /customers?page=}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private CustomerDetails customer;
+    private CustomerPage<CustomerSummary> page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        customer = CustomerDetails.of(SampleCustomers.customer(1));
+        List<CustomerSummary> content = LongStream.rangeClosed(1, CustomerService.PAGE_SIZE)
+                .mapToObj(SampleCustomers::customer)
+                .map(c -> new CustomerSummary(c.getId(), c.getPeselNumber(), c.getBirthDate(), c.getName(), c.getSurname()))
+                .toList();
+        page = new CustomerPage<>(content, 0, CustomerService.PAGE_SIZE, 10_000, 10_000 / CustomerService.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public byte[] serializeCustomer() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(customer);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -7,8 +7,10 @@ package pl.szczesnaj.customersapp;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 
 @SpringBootApplication
+@EnableCaching
 public class CustomersappApplication {
     public static void main(String[] args) {
         SpringApplication.run(CustomersappApplication.class, args);
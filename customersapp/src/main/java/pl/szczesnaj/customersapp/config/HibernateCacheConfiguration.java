@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Hibernate second-level cache of customers and contacts, and query cache of the first
+ * pages of customer lists, kept in Caffeine through JCache. Sizes and TTLs come from
+ * {@code customers.entity-cache.*} and {@code customers.query-cache.*}; hit and miss counts are
+ * published as {@code hibernate.second.level.cache.*} and {@code hibernate.cache.query.*} metrics.
+ */
+@Configuration(proxyBeanMethods = false)
+class HibernateCacheConfiguration {
+
+    @Bean
+    CacheManager hibernateCacheManager(@Value("${customers.entity-cache.max-entries:100000}") long entityMaxEntries,
+                                       @Value("${customers.entity-cache.ttl:10m}") Duration entityTtl,
+                                       @Value("${customers.query-cache.max-entries:1000}") long queryMaxEntries,
+                                       @Value("${customers.query-cache.ttl:1m}") Duration queryTtl) {
+        // a cache manager of its own per application context, caches cannot be created twice in one
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("customersapp-hibernate-" + UUID.randomUUID()), getClass().getClassLoader());
+        cacheManager.createCache(Customer.class.getName(), configuration(entityMaxEntries, entityTtl));
+        cacheManager.createCache(CommunicationMethods.class.getName(), configuration(entityMaxEntries, entityTtl));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                configuration(queryMaxEntries, queryTtl));
+        // last update of each table, must outlive every cached query result
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<>().setStatisticsEnabled(true));
+        return cacheManager;
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> configuration(long maxEntries, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxEntries));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Guards customer endpoints against N+1 selects. Each request may run at most
+ * {@code customers.query-budget.max-queries} SQL statements; with
+ * {@code customers.query-budget.mode=fail} the first statement over the budget fails the request.
+ */
+@Configuration(proxyBeanMethods = false)
+class QueryBudgetConfiguration {
+
+    @Bean
+    QueryCounter queryCounter(@Value("${customers.query-budget.max-queries:10}") int maxQueries,
+                              @Value("${customers.query-budget.mode:LOG}") QueryCounter.Mode mode) {
+        return new QueryCounter(maxQueries, mode);
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer queryCounterCustomizer(QueryCounter queryCounter) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, queryCounter);
+    }
+
+    @Bean
+    FilterRegistrationBean<QueryBudgetFilter> queryBudgetFilter(QueryCounter queryCounter, MeterRegistry meterRegistry) {
+        FilterRegistrationBean<QueryBudgetFilter> registration = new FilterRegistrationBean<>(
+                new QueryBudgetFilter(queryCounter, meterRegistry));
+        registration.addUrlPatterns("/customers/*", "/welcome/*");
+        return registration;
+    }
+}
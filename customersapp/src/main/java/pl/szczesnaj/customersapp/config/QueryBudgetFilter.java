@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Counts SQL statements of each request with {@link QueryCounter}. The count is recorded
+ * as {@code customers.request.queries}, tagged with the URI pattern, and requests over
+ * the budget are logged.
+ */
+@Slf4j
+class QueryBudgetFilter extends OncePerRequestFilter {
+    static final String QUERIES_METRIC = "customers.request.queries";
+
+    private final QueryCounter queryCounter;
+    private final MeterRegistry meterRegistry;
+
+    QueryBudgetFilter(QueryCounter queryCounter, MeterRegistry meterRegistry) {
+        this.queryCounter = queryCounter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryCounter.start();
+        int queries;
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            queries = QueryCounter.stop();
+        }
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder(QUERIES_METRIC)
+                .description("SQL statements per request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(queries);
+        if (queries > queryCounter.getMaxQueries()) {
+            log.warn("{} {} executed {} SQL statements, budget is {}",
+                    request.getMethod(), uri, queries, queryCounter.getMaxQueries());
+        }
+    }
+}
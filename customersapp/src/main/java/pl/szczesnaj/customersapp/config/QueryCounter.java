@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts SQL statements prepared by Hibernate on the current thread, between {@link #start()}
+ * and {@link #stop()}. Statements of other threads and of plain JDBC are not counted.
+ * <p>
+ * When a budget is set, a statement going over it either only marks the count as exceeded,
+ * or fails with {@link QueryBudgetExceededException} in {@link Mode#FAIL} mode.
+ */
+class QueryCounter implements StatementInspector {
+    enum Mode {
+        LOG,
+        FAIL
+    }
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private final int maxQueries;
+    private final Mode mode;
+
+    QueryCounter(int maxQueries, Mode mode) {
+        this.maxQueries = maxQueries;
+        this.mode = mode;
+    }
+
+    static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return count != null ? count[0] : 0;
+    }
+
+    int getMaxQueries() {
+        return maxQueries;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        int[] count = COUNT.get();
+        if (count != null && ++count[0] > maxQueries && mode == Mode.FAIL) {
+            throw new QueryBudgetExceededException(
+                    "Query budget of " + maxQueries + " exceeded by: " + sql);
+        }
+        return sql;
+    }
+}
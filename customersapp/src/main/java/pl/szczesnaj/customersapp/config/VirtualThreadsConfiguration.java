@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Active with {@code spring.threads.virtual.enabled=true}. Tomcat then serves every request
+ * on its own virtual thread, so the thread pool no longer limits concurrency and requests
+ * would pile up waiting for a database connection. Customer endpoints are therefore
+ * limited to {@code customers.web.max-concurrent-requests}, sized against the Hikari pool.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnThreading(Threading.VIRTUAL)
+class VirtualThreadsConfiguration {
+
+    @Bean
+    FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${customers.web.max-concurrent-requests:10}") int maxConcurrentRequests,
+            @Value("${customers.web.admission-timeout:5s}") Duration admissionTimeout) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(
+                new ConcurrencyLimitFilter(maxConcurrentRequests, admissionTimeout));
+        registration.addUrlPatterns("/customers/*", "/welcome/*");
+        return registration;
+    }
+}
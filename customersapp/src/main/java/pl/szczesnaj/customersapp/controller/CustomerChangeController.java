@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pl.szczesnaj.customersapp.service.CustomerChangeFeed;
+import pl.szczesnaj.customersapp.service.CustomerChangeItem;
+import pl.szczesnaj.customersapp.service.CustomerSlice;
+
+/**
+ * Change feed of customers: batches of changes after a sequence number, or a stream of them
+ * with {@code Accept: text/event-stream}.
+ */
+@RestController
+@RequestMapping("/customers/changes")
+@RequiredArgsConstructor
+class CustomerChangeController {
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private final CustomerChangeFeed changeFeed;
+    private final CustomerChangeStreams changeStreams;
+
+    @GetMapping
+    public ResponseEntity<CustomerSlice<CustomerChangeItem>> getChanges(@RequestParam(defaultValue = "0") long since,
+                                                                       @RequestParam(defaultValue = "100") int limit) {
+        if (since < 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        CustomerSlice<CustomerChangeItem> changes = changeFeed.getChanges(since, limit);
+        if (changes.content().isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        return new ResponseEntity<>(changes, HttpStatus.OK);
+    }
+
+    /**
+     * Streams changes after {@code since}, or after {@code Last-Event-ID} when reconnecting;
+     * without either only changes made from now on are sent.
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(required = false) Long since,
+                                    @RequestHeader(value = LAST_EVENT_ID, required = false) Long lastEventId) {
+        long position = since != null ? since
+                : lastEventId != null ? lastEventId
+                : changeFeed.getLastSequence();
+        return changeStreams.subscribe(Math.max(position, 0));
+    }
+}
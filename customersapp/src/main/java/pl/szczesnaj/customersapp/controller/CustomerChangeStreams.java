@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.controller;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pl.szczesnaj.customersapp.service.CustomerChangeFeed;
+import pl.szczesnaj.customersapp.service.CustomerChangeItem;
+import pl.szczesnaj.customersapp.service.CustomerSlice;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Server-Sent Events streams of the change feed. A single thread polls the change log every
+ * {@code customers.changes.poll-interval} while there are subscribers, so changes made on other
+ * nodes are sent too; subscribers at the same position share one read. Every event carries the
+ * sequence number of its change as id, so a reconnecting client resumes with {@code Last-Event-ID}.
+ * <p>
+ * The polling thread only queues the changes read; each subscriber is sent its queue by its own
+ * virtual thread, so a client which stops reading holds up nobody else. A subscriber with
+ * {@value #MAX_QUEUED_BATCHES} batches queued is dropped and has to reconnect.
+ */
+@Slf4j
+@Component
+class CustomerChangeStreams {
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+    private static final int MAX_QUEUED_BATCHES = 16;
+
+    private final CustomerChangeFeed changeFeed;
+    private final Duration timeout;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-changes");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService senders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("customer-changes-sender-", 0).factory());
+
+    CustomerChangeStreams(CustomerChangeFeed changeFeed,
+                          @Value("${customers.changes.poll-interval:1s}") Duration pollInterval,
+                          @Value("${customers.changes.stream-timeout:30m}") Duration timeout) {
+        this.changeFeed = changeFeed;
+        this.timeout = timeout;
+        dispatcher.scheduleWithFixedDelay(this::dispatch, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param since sequence number of the last change the client has seen
+     */
+    SseEmitter subscribe(long since) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, since);
+        emitter.onCompletion(subscriber::stop);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscriber.stop());
+        subscribers.add(subscriber);
+        subscriber.start();
+        dispatcher.execute(this::dispatch);
+        return emitter;
+    }
+
+    private void dispatch() {
+        try {
+            Map<Long, List<Subscriber>> byPosition = subscribers.stream()
+                    .collect(Collectors.groupingBy(subscriber -> subscriber.position));
+            byPosition.forEach((position, group) -> {
+                CustomerSlice<CustomerChangeItem> changes;
+                long since = position;
+                do {
+                    changes = changeFeed.getChanges(since, CustomerChangeFeed.MAX_BATCH_SIZE);
+                    for (Subscriber subscriber : group) {
+                        subscriber.enqueue(changes.content());
+                    }
+                    since = Long.parseLong(changes.nextCursor());
+                } while (changes.hasNext());
+            });
+        } catch (RuntimeException e) {
+            log.warn("Sending customer changes failed", e);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    /**
+     * Stream of one client. The dispatcher thread queues changes, the sender thread sends them.
+     */
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<List<CustomerChangeItem>> queue = new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES);
+        private volatile long position;
+        private volatile boolean dropped;
+        private volatile Future<?> sender;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+
+        void start() {
+            sender = senders.submit(this::sendQueued);
+        }
+
+        void stop() {
+            subscribers.remove(this);
+            Future<?> running = sender;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+
+        /**
+         * Queues changes without waiting; {@code position} is the last change queued.
+         */
+        void enqueue(List<CustomerChangeItem> changes) {
+            if (changes.isEmpty() || !subscribers.contains(this)) {
+                return;
+            }
+            if (!queue.offer(changes)) {
+                log.debug("Customer changes stream dropped, the client does not keep up");
+                // completed by the sender thread, the emitter may be blocked in a send
+                dropped = true;
+                stop();
+                return;
+            }
+            position = changes.get(changes.size() - 1).sequence();
+        }
+
+        private void sendQueued() {
+            try {
+                while (true) {
+                    List<CustomerChangeItem> changes = queue.poll(HEARTBEAT_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+                    if (changes == null) {
+                        // a comment now and then finds clients which went away
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                        continue;
+                    }
+                    for (CustomerChangeItem change : changes) {
+                        emitter.send(SseEmitter.event()
+                                .id(String.valueOf(change.sequence()))
+                                .data(change, MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (dropped) {
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                stop();
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
@@ -5,28 +5,52 @@
 
 package pl.szczesnaj.customersapp.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
-import org.supercsv.io.dozer.CsvDozerBeanWriter;
-import org.supercsv.io.dozer.ICsvDozerBeanWriter;
-import org.supercsv.prefs.CsvPreference;
+import pl.szczesnaj.customersapp.export.CountingOutputStream;
+import pl.szczesnaj.customersapp.export.CustomerDeltaWriter;
+import pl.szczesnaj.customersapp.export.CustomerWriter;
+import pl.szczesnaj.customersapp.export.ExportCompression;
+import pl.szczesnaj.customersapp.export.ExportFormat;
 import pl.szczesnaj.customersapp.model.CommunicationMethods;
 import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.CustomerSummary;
+import pl.szczesnaj.customersapp.service.CustomerFilter;
+import pl.szczesnaj.customersapp.service.CustomerImportReport;
+import pl.szczesnaj.customersapp.service.CustomerImporter;
+import pl.szczesnaj.customersapp.service.CustomerMetrics;
+import pl.szczesnaj.customersapp.service.CustomerOrder;
+import pl.szczesnaj.customersapp.service.CustomerPage;
+import pl.szczesnaj.customersapp.service.CustomerSearch;
 import pl.szczesnaj.customersapp.service.CustomerService;
+import pl.szczesnaj.customersapp.service.CustomerSlice;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -34,16 +58,19 @@ import java.util.Optional;
 @RequiredArgsConstructor
 class CustomerController {
     private final CustomerService customerService;
+    private final CustomerImporter customerImporter;
+    private final CustomerMetrics customerMetrics;
+    private final ObjectMapper objectMapper;
 
     @GetMapping(value = "/{peselNum}")
-    public ResponseEntity<Customer> getCustomerByPeselNum(@PathVariable String peselNum) {
-        Optional<Customer> customer = customerService.getCustomerByPeselNum(peselNum);
+    public ResponseEntity<CustomerDetails> getCustomerByPeselNum(@PathVariable String peselNum) {
+        Optional<CustomerDetails> customer = customerService.getCustomerByPeselNum(peselNum);
         return customer.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
                 .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
     @PostMapping
-    public ResponseEntity<Customer> addCustomer(@RequestBody @Valid Customer user) {
+    public ResponseEntity<CustomerDetails> addCustomer(@RequestBody @Valid Customer user) {
         Optional<Customer> customer = customerService.addCustomer(user);
         if (customer.isPresent()) {
             URI location = ServletUriComponentsBuilder
@@ -54,15 +81,41 @@ class CustomerController {
 
             return ResponseEntity
                     .created(location)
-                    .body(customer.get());
+                    .body(CustomerDetails.of(customer.get()));
         }
         return new ResponseEntity<>(HttpStatus.CONFLICT);
     }
 
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<CustomerImportReport> addCustomers(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(customerImporter.importJson(request.getInputStream()));
+    }
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<CustomerImportReport> importFromCSV(HttpServletRequest request) throws IOException {
+        Charset charset = request.getCharacterEncoding() != null
+                ? Charset.forName(request.getCharacterEncoding())
+                : StandardCharsets.UTF_8;
+        return importFromCSV(request.getInputStream(), charset);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<CustomerImportReport> importFromCSV(@RequestParam("file") MultipartFile file) throws IOException {
+        return importFromCSV(file.getInputStream(), StandardCharsets.UTF_8);
+    }
+
+    private ResponseEntity<CustomerImportReport> importFromCSV(InputStream csv, Charset charset) throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(csv, charset)) {
+            return ResponseEntity.ok(customerImporter.importCsv(reader));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @PostMapping(value = "/{peselNum}/methods")
-    public ResponseEntity<Customer> addContactToCustomer(@PathVariable String peselNum,
-                                                         @RequestBody @Valid CommunicationMethods contact) {
-        return ResponseEntity.of(customerService.addContact(peselNum, contact));
+    public ResponseEntity<CustomerDetails> addContactToCustomer(@PathVariable String peselNum,
+                                                                @RequestBody @Valid CommunicationMethods contact) {
+        return ResponseEntity.of(customerService.addContact(peselNum, contact).map(CustomerDetails::of));
     }
 
     @DeleteMapping(value = "/{peselNum}")
@@ -75,7 +128,7 @@ class CustomerController {
     }
 
     @PutMapping(value = "/{peselNum}")
-    public ResponseEntity<Customer> editCustomer(@PathVariable("peselNum") String peselNumber, @RequestBody @Valid Customer customerRequest) {
+    public ResponseEntity<CustomerDetails> editCustomer(@PathVariable("peselNum") String peselNumber, @RequestBody @Valid Customer customerRequest) {
         Optional<Customer> customer;
         try {
             customer = customerService.editCustomer(peselNumber, customerRequest);
@@ -83,46 +136,135 @@ class CustomerController {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
-        return customer.map(c -> new ResponseEntity<>(c, HttpStatus.OK))
+        return customer.map(c -> new ResponseEntity<>(CustomerDetails.of(c), HttpStatus.OK))
                 .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
     @GetMapping
-    public ResponseEntity<Page<Customer>> getAllCustomers(@RequestParam(required = false) Integer page, Sort.Direction sort) {
+    public ResponseEntity<CustomerPage<CustomerSummary>> getAllCustomers(@RequestParam(required = false) Integer page,
+                                                                         Sort.Direction sort,
+                                                                         @RequestParam(defaultValue = "id") String orderBy,
+                                                                         @RequestParam(required = false) Boolean hasEmail,
+                                                                         @RequestParam(required = false) Boolean hasBusinessPhone) {
         int pageNumber = page != null && page >= 0 ? page : 0;
-        Page<Customer> customers = customerService.getCustomers(pageNumber, sort);
-        if (customers.isEmpty()) {
+        CustomerPage<CustomerSummary> customers;
+        try {
+            customers = customerService.getCustomers(pageNumber, CustomerOrder.fromName(orderBy), sort,
+                    new CustomerFilter(hasEmail, hasBusinessPhone), CustomerSummary.class);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (customers.content().isEmpty()) {
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
         return new ResponseEntity<>(customers, HttpStatus.OK);
     }
 
+    @GetMapping(params = "limit")
+    public ResponseEntity<CustomerSlice<CustomerSummary>> getCustomersAfter(@RequestParam int limit,
+                                                                            @RequestParam(required = false) String after,
+                                                                            @RequestParam(defaultValue = "false") boolean count,
+                                                                            Sort.Direction sort,
+                                                                            @RequestParam(defaultValue = "id") String orderBy,
+                                                                            @RequestParam(required = false) Boolean hasEmail,
+                                                                            @RequestParam(required = false) Boolean hasBusinessPhone) {
+        CustomerSlice<CustomerSummary> customers;
+        try {
+            customers = customerService.getCustomers(after, limit, CustomerOrder.fromName(orderBy), sort,
+                    new CustomerFilter(hasEmail, hasBusinessPhone), count, CustomerSummary.class);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (customers.content().isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        return new ResponseEntity<>(customers, HttpStatus.OK);
+    }
+
+    /**
+     * Finds customers in the search index, 503 while the index is being built.
+     */
+    @GetMapping(value = "/search")
+    public ResponseEntity<CustomerSlice<CustomerDetails>> searchCustomers(@RequestParam(required = false) String name,
+                                                                          @RequestParam(required = false) String surname,
+                                                                          @RequestParam(required = false) String email,
+                                                                          @RequestParam(required = false) String phone,
+                                                                          @RequestParam(defaultValue = "20") int limit,
+                                                                          @RequestParam(required = false) String after) {
+        CustomerSlice<CustomerDetails> customers;
+        try {
+            customers = customerService.searchCustomers(new CustomerSearch(name, surname, email, phone), after, limit);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (customers.content().isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        return new ResponseEntity<>(customers, HttpStatus.OK);
+    }
+
+    /**
+     * Streams customers in the format given by the {@code format} parameter or negotiated
+     * from {@code Accept}, compressed as given by the {@code compression} parameter or negotiated
+     * from {@code Accept-Encoding}: all of them or, with {@code modifiedSince}, only customers added
+     * or changed at or after that time, preceded by tombstones of customers deleted since then.
+     * Changes are stamped before they commit, so clients pass the start of their previous export
+     * minus an overlap longer than any write transaction.
+     */
     @GetMapping(value = "/export")
-    public void exportToCSV(HttpServletResponse response) throws IOException {
-        response.setContentType("text/csv");
+    public void exportCustomers(@RequestParam(required = false) String format,
+                                @RequestParam(required = false) String compression,
+                                @RequestParam(required = false) Instant modifiedSince,
+                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
+        ExportFormat exportFormat;
+        ExportCompression exportCompression;
+        try {
+            exportFormat = format != null
+                    ? ExportFormat.fromName(format)
+                    : ExportFormat.negotiate(MediaType.parseMediaTypes(accept)).orElse(null);
+            exportCompression = compression != null
+                    ? ExportCompression.fromName(compression)
+                    : ExportCompression.negotiate(acceptEncoding);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        if (exportFormat == null) {
+            throw new HttpMediaTypeNotAcceptableException(
+                    Arrays.stream(ExportFormat.values()).map(ExportFormat::getMediaType).toList());
+        }
+
+        response.setContentType(exportFormat.getMediaType().toString());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (exportCompression != ExportCompression.NONE) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, exportCompression.getCoding());
+        }
         DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
         String currentDateTime = dateFormatter.format(new Date());
 
         String headerKey = "Content-Disposition";
-        String headerValue = "attachment; filename=customers_" + currentDateTime + ".csv";
+        String headerValue = "attachment; filename=customers_" + currentDateTime + exportFormat.getExtension();
         response.setHeader(headerKey, headerValue);
-        final List<Customer> customers = customerService.getCustomers();
-
-        try (ICsvDozerBeanWriter beanWriter = new CsvDozerBeanWriter(response.getWriter(),
-                CsvPreference.STANDARD_PREFERENCE)) {
-            String[] csvHeader = {"Name", "Surname", "PESEL number",
-                    "Email", "Residence Address", "Registered Address",
-                    "Private Phone Number", "Business Phone Number"};
-            String[] fieldMappings = {"name", "surname", "peselNumber",
-                    "contacts.emailAddress", "contacts.residenceAddress", "contacts.registeredAddress",
-                    "contacts.privatePhoneNumber", "contacts.businessPhoneNumber"};
-
-            beanWriter.configureBeanMapping(Customer.class, fieldMappings);
-
-            beanWriter.writeHeader(csvHeader);
-            for (Customer c : customers) {
-                beanWriter.write(c);
+
+        // the servlet stream stays open, so the metrics are recorded before the client gets the end of the body
+        CountingOutputStream out = new CountingOutputStream(response.getOutputStream());
+        OutputStream body = exportCompression.wrap(StreamUtils.nonClosing(out));
+        long rows;
+        if (modifiedSince != null) {
+            try (CustomerDeltaWriter writer = exportFormat.openDelta(body, objectMapper)) {
+                writer.writeHeader();
+                rows = customerService.exportCustomers(modifiedSince, writer::write, writer::writeDeleted);
+            }
+        } else {
+            try (CustomerWriter writer = exportFormat.open(body, objectMapper)) {
+                writer.writeHeader();
+                rows = customerService.exportCustomers(writer::write);
             }
         }
+        customerMetrics.exported(rows, out.getCount());
     }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import pl.szczesnaj.customersapp.export.ExportFormat;
+import pl.szczesnaj.customersapp.service.CustomerExportJob;
+import pl.szczesnaj.customersapp.service.CustomerExportJobs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+/**
+ * Background exports. A started job is polled for progress and, once completed,
+ * its file is downloaded with {@link ExportFileSender}; {@code Range} requests allow resuming
+ * an interrupted download.
+ */
+@RestController
+@RequestMapping("/customers/exports")
+@RequiredArgsConstructor
+class CustomerExportController {
+    private static final String APPLICATION_GZIP = "application/gzip";
+    private static final DateTimeFormatter FILE_NAME_DATE_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").withZone(ZoneOffset.UTC);
+
+    private final CustomerExportJobs exportJobs;
+
+    @PostMapping
+    public ResponseEntity<CustomerExportJob> startExport(@RequestParam(defaultValue = "csv") String format,
+                                                         @RequestParam(defaultValue = "false") boolean gzip)
+            throws IOException {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.fromName(format);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Optional<CustomerExportJob> job = exportJobs.start(exportFormat, gzip);
+        if (job.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        URI location = ServletUriComponentsBuilder
+                .fromCurrentRequestUri()
+                .path("/{id}")
+                .buildAndExpand(job.get().id())
+                .toUri();
+        return ResponseEntity.accepted()
+                .location(location)
+                .body(job.get());
+    }
+
+    @GetMapping(value = "/{id}")
+    public ResponseEntity<CustomerExportJob> getExport(@PathVariable String id) {
+        return ResponseEntity.of(exportJobs.get(id));
+    }
+
+    @GetMapping(value = "/{id}/file")
+    public void downloadExport(@PathVariable String id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Optional<CustomerExportJob> job = exportJobs.get(id);
+        if (job.isEmpty()) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        Optional<Path> file = exportJobs.getFile(id);
+        if (file.isEmpty()) {
+            response.setStatus(HttpStatus.CONFLICT.value());
+            return;
+        }
+
+        String fileName = "customers_" + FILE_NAME_DATE_TIME.format(job.get().createdAt())
+                + job.get().format().getExtension() + (job.get().gzip() ? ".gz" : "");
+        response.setContentType(job.get().gzip()
+                ? APPLICATION_GZIP
+                : job.get().format().getMediaType().toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(fileName).build().toString());
+        // export files never change, so the job id identifies the content
+        ExportFileSender.send(file.get(), '"' + id + '"', job.get().completedAt(), request, response);
+    }
+
+    @DeleteMapping(value = "/{id}")
+    public ResponseEntity<Void> deleteExport(@PathVariable String id) {
+        if (exportJobs.get(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (!exportJobs.remove(id)) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Sends export files without copying them through the heap. On Tomcat the file is handed over
+ * to the connector, which writes it with {@code sendfile} once the request is processed; on other
+ * containers it is written with {@link FileChannel#transferTo}. Conditional requests
+ * ({@code If-None-Match}, {@code If-Modified-Since}, {@code If-Range}) and a single byte range
+ * are supported, several ranges are answered with the whole file.
+ */
+final class ExportFileSender {
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private ExportFileSender() {
+    }
+
+    /**
+     * Sends the file, whose content never changes for the given ETag. Content type and
+     * disposition have to be set on the response before.
+     */
+    static void send(Path file, String etag, Instant lastModified,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified.toEpochMilli())) {
+            return;
+        }
+        long length = Files.size(file);
+        long start = 0;
+        long end = length - 1;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeValid(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                }
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+                start = length;
+            }
+            if (start >= length) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (ranges.size() == 1) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(start, end, length));
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            while (count > 0) {
+                long transferred = channel.transferTo(start, count, out);
+                start += transferred;
+                count -= transferred;
+            }
+        }
+    }
+
+    /**
+     * A range applies when there is no {@code If-Range} or it still matches the file.
+     */
+    private static boolean isRangeValid(HttpServletRequest request, String etag, Instant lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified.getEpochSecond();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
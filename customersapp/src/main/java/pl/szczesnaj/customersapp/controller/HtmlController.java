@@ -6,19 +6,23 @@
 package pl.szczesnaj.customersapp.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
-import pl.szczesnaj.customersapp.model.CommunicationMethods;
-import pl.szczesnaj.customersapp.model.Customer;
+import org.springframework.web.server.ResponseStatusException;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.service.CustomerCursor;
+import pl.szczesnaj.customersapp.service.CustomerFilter;
+import pl.szczesnaj.customersapp.service.CustomerOrder;
+import pl.szczesnaj.customersapp.service.CustomerPage;
 import pl.szczesnaj.customersapp.service.CustomerService;
+import pl.szczesnaj.customersapp.service.CustomerSlice;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Controller
 class HtmlController {
@@ -28,23 +32,69 @@ class HtmlController {
     @GetMapping(value = {"/welcome", "/welcome/{pageNumber}"})
     public String displayCustomers(Model model,
                                    @PathVariable(value = "pageNumber", required = false) Integer currentPage,
-                                   @RequestParam(defaultValue = "ASC") Sort.Direction sort) {
+                                   @RequestParam(defaultValue = "ASC") Sort.Direction sort,
+                                   @RequestParam(defaultValue = "id") String orderBy,
+                                   @RequestParam(required = false) Boolean hasEmail,
+                                   @RequestParam(required = false) Boolean hasBusinessPhone) {
         int pageNumber = currentPage != null && currentPage >= 0 ? currentPage : 0;
+        CustomerOrder order = toOrder(orderBy);
+        CustomerFilter filter = new CustomerFilter(hasEmail, hasBusinessPhone);
 
-        Page<Customer> page = customerService.getCustomers(pageNumber, sort);
-        int totalPages = page.getTotalPages();
-        long totalItems = page.getTotalElements();
-        List<Customer> customers = page.getContent().stream().peek(c -> {
-            if (c.getContacts() == null) {
-                c.setContacts(new CommunicationMethods());
-            }
-        }).collect(Collectors.toList());
+        CustomerPage<CustomerDetails> page = customerService.getCustomers(pageNumber, order, sort, filter,
+                CustomerDetails.class);
+        int totalPages = page.totalPages();
+        long totalItems = page.totalElements();
+        List<CustomerDetails> customers = page.content();
 
         model.addAttribute("currentPage", currentPage);
         model.addAttribute("totalPages", totalPages-1);
         model.addAttribute("totalItems", totalItems);
         model.addAttribute("customers", customers);
+        addListing(model, sort, order, filter);
+        model.addAttribute("nextCursor", page.hasNext()
+                ? CustomerCursor.encode(customers.get(customers.size() - 1), order)
+                : null);
 
         return "index";
     }
+
+    @GetMapping(value = "/welcome", params = "after")
+    public String displayCustomersAfter(Model model,
+                                        @RequestParam String after,
+                                        @RequestParam(defaultValue = "ASC") Sort.Direction sort,
+                                        @RequestParam(defaultValue = "id") String orderBy,
+                                        @RequestParam(required = false) Boolean hasEmail,
+                                        @RequestParam(required = false) Boolean hasBusinessPhone) {
+        CustomerOrder order = toOrder(orderBy);
+        CustomerFilter filter = new CustomerFilter(hasEmail, hasBusinessPhone);
+        CustomerSlice<CustomerDetails> slice;
+        try {
+            slice = customerService.getCustomers(after, CustomerService.PAGE_SIZE, order, sort, filter, false,
+                    CustomerDetails.class);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        model.addAttribute("customers", slice.content());
+        addListing(model, sort, order, filter);
+        model.addAttribute("nextCursor", slice.nextCursor());
+
+        return "index";
+    }
+
+    private void addListing(Model model, Sort.Direction sort, CustomerOrder order, CustomerFilter filter) {
+        model.addAttribute("sort", sort);
+        model.addAttribute("orderBy", order);
+        model.addAttribute("orders", CustomerOrder.values());
+        model.addAttribute("hasEmail", filter.hasEmail());
+        model.addAttribute("hasBusinessPhone", filter.hasBusinessPhone());
+    }
+
+    private static CustomerOrder toOrder(String orderBy) {
+        try {
+            return CustomerOrder.fromName(orderBy);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot sort by " + orderBy, e);
+        }
+    }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads customers written by {@link CustomerColumnarWriter}, one row group at a time.
+ * Tombstones of a delta export are read as customers with only the PESEL number,
+ * told apart by {@link #isDeleted()}.
+ */
+public class CustomerColumnarReader implements Closeable {
+    private static final List<BiConsumer<CommunicationMethods, String>> CONTACT_SETTERS = List.of(
+            CommunicationMethods::setEmailAddress,
+            CommunicationMethods::setResidenceAddress,
+            CommunicationMethods::setRegisteredAddress,
+            CommunicationMethods::setPrivatePhoneNumber,
+            CommunicationMethods::setBusinessPhoneNumber);
+
+    private final DataInputStream in;
+    private Customer[] rowGroup = new Customer[0];
+    private boolean[] deleted = new boolean[0];
+    private boolean withDeletedColumn;
+    private int position;
+    private boolean finished;
+
+    public CustomerColumnarReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the input does not start with the columnar format magic
+     */
+    public void readHeader() throws IOException {
+        byte[] magic = in.readNBytes(CustomerColumnarWriter.MAGIC.length);
+        withDeletedColumn = Arrays.equals(magic, CustomerColumnarWriter.MAGIC);
+        if (!withDeletedColumn && !Arrays.equals(magic, CustomerColumnarWriter.MAGIC_V1)) {
+            throw new IllegalArgumentException("Not a customers columnar file");
+        }
+    }
+
+    /**
+     * @return true when the customer last returned by {@link #read()} is a tombstone of a deleted customer
+     */
+    public boolean isDeleted() {
+        return position > 0 && deleted[position - 1];
+    }
+
+    /**
+     * @return next customer or null at the end of input
+     */
+    public Customer read() throws IOException {
+        if (position == rowGroup.length) {
+            if (finished || !readRowGroup()) {
+                finished = true;
+                return null;
+            }
+        }
+        return rowGroup[position++];
+    }
+
+    private boolean readRowGroup() throws IOException {
+        int rows = readVarInt();
+        if (rows == 0) {
+            return false;
+        }
+        rowGroup = new Customer[rows];
+        deleted = new boolean[rows];
+        position = 0;
+        for (int i = 0; i < rows; i++) {
+            rowGroup[i] = new Customer();
+        }
+
+        String[] names = readDictionaryColumn(rows);
+        String[] surnames = readDictionaryColumn(rows);
+        for (int i = 0; i < rows; i++) {
+            rowGroup[i].setName(names[i]);
+            rowGroup[i].setSurname(surnames[i]);
+            rowGroup[i].setPeselNumber(PeselNumber.unpack(in.readLong()));
+        }
+        if (withDeletedColumn) {
+            byte[] bitmap = in.readNBytes((rows + 7) / 8);
+            for (int i = 0; i < rows; i++) {
+                deleted[i] = (bitmap[i / 8] & 1 << (i % 8)) != 0;
+            }
+        }
+        for (BiConsumer<CommunicationMethods, String> setter : CONTACT_SETTERS) {
+            String[] values = readOptionalColumn(rows);
+            for (int i = 0; i < rows; i++) {
+                if (values[i] != null) {
+                    if (rowGroup[i].getContacts() == null) {
+                        rowGroup[i].setContacts(new CommunicationMethods());
+                    }
+                    setter.accept(rowGroup[i].getContacts(), values[i]);
+                }
+            }
+        }
+        return true;
+    }
+
+    private String[] readDictionaryColumn(int rows) throws IOException {
+        String[] dictionary = new String[readVarInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString();
+        }
+        String[] values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = dictionary[readVarInt()];
+        }
+        return values;
+    }
+
+    private String[] readOptionalColumn(int rows) throws IOException {
+        byte[] presence = in.readNBytes((rows + 7) / 8);
+        String[] values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            if ((presence[i / 8] & 1 << (i % 8)) != 0) {
+                values[i] = readString();
+            }
+        }
+        return values;
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Writes customers in a compact binary columnar layout. Customers are buffered into row groups
+ * of {@value #ROW_GROUP_SIZE}, and each row group is written column by column, so memory use
+ * does not depend on the number of exported customers.
+ * <pre>
+ * file          = magic "CUSTCOL2", row group*, varint 0
+ * row group     = varint rows, name, surname (dictionary columns), PESEL (rows * int64),
+ *                 deleted (bitmap), email, residence address, registered address, private phone,
+ *                 business phone (optional columns)
+ * dictionary    = varint size, string*, varint index * rows
+ * bitmap        = (rows + 7) / 8 bytes, least significant bit first
+ * optional      = presence bitmap, string * present values
+ * string        = varint length, UTF-8 bytes
+ * varint        = unsigned LEB128
+ * </pre>
+ * Dictionaries are local to a row group, names and surnames repeat a lot, so each of them
+ * is stored once per row group and rows keep a one or two byte index.
+ * <p>
+ * Rows marked in the deleted bitmap are tombstones of a delta export, holding only the PESEL number
+ * and empty name and surname. Version 1 files, read by {@link CustomerColumnarReader} too, have no
+ * deleted bitmap.
+ */
+public class CustomerColumnarWriter implements CustomerDeltaWriter {
+    static final byte[] MAGIC = "CUSTCOL2".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] MAGIC_V1 = "CUSTCOL1".getBytes(StandardCharsets.US_ASCII);
+    static final int ROW_GROUP_SIZE = 8192;
+    static final List<Function<CommunicationMethods, String>> CONTACT_COLUMNS = List.of(
+            CommunicationMethods::getEmailAddress,
+            CommunicationMethods::getResidenceAddress,
+            CommunicationMethods::getRegisteredAddress,
+            CommunicationMethods::getPrivatePhoneNumber,
+            CommunicationMethods::getBusinessPhoneNumber);
+
+    private final DataOutputStream out;
+    private final List<Customer> rowGroup = new ArrayList<>(ROW_GROUP_SIZE);
+    private final BitSet deletedRows = new BitSet(ROW_GROUP_SIZE);
+
+    public CustomerColumnarWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        out.write(MAGIC);
+    }
+
+    @Override
+    public void write(Customer customer) {
+        rowGroup.add(customer);
+        if (rowGroup.size() == ROW_GROUP_SIZE) {
+            try {
+                writeRowGroup();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void writeDeleted(String peselNumber) {
+        Customer tombstone = new Customer();
+        tombstone.setPeselNumber(peselNumber);
+        tombstone.setName("");
+        tombstone.setSurname("");
+        deletedRows.set(rowGroup.size());
+        write(tombstone);
+    }
+
+    /**
+     * Writes the buffered customers as a row group, possibly shorter than {@value #ROW_GROUP_SIZE}.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeRowGroup();
+        out.flush();
+    }
+
+    private void writeRowGroup() throws IOException {
+        if (rowGroup.isEmpty()) {
+            return;
+        }
+        writeVarInt(rowGroup.size());
+        writeDictionaryColumn(Customer::getName);
+        writeDictionaryColumn(Customer::getSurname);
+        for (Customer customer : rowGroup) {
+            out.writeLong(PeselNumber.pack(customer.getPeselNumber()));
+        }
+        out.write(Arrays.copyOf(deletedRows.toByteArray(), (rowGroup.size() + 7) / 8));
+        for (Function<CommunicationMethods, String> column : CONTACT_COLUMNS) {
+            writeOptionalColumn(customer -> customer.getContacts() != null
+                    ? column.apply(customer.getContacts())
+                    : null);
+        }
+        rowGroup.clear();
+        deletedRows.clear();
+    }
+
+    private void writeDictionaryColumn(Function<Customer, String> column) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] indexes = new int[rowGroup.size()];
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < indexes.length; i++) {
+            String value = column.apply(rowGroup.get(i));
+            indexes[i] = dictionary.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        writeVarInt(values.size());
+        for (String value : values) {
+            writeString(value);
+        }
+        for (int index : indexes) {
+            writeVarInt(index);
+        }
+    }
+
+    private void writeOptionalColumn(Function<Customer, String> column) throws IOException {
+        byte[] presence = new byte[(rowGroup.size() + 7) / 8];
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < rowGroup.size(); i++) {
+            String value = column.apply(rowGroup.get(i));
+            if (value != null) {
+                presence[i / 8] |= (byte) (1 << (i % 8));
+                values.add(value);
+            }
+        }
+
+        out.write(presence);
+        for (String value : values) {
+            writeString(value);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        writeVarInt(0);
+        out.close();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.io.ICsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes a delta export as CSV: the export layout with a trailing "Deleted" column,
+ * {@code true} for tombstones of deleted customers and empty otherwise.
+ */
+public class CustomerCsvDeltaWriter implements CustomerDeltaWriter {
+    public static final String[] CSV_HEADER = Arrays.copyOf(CustomerCsvWriter.CSV_HEADER,
+            CustomerCsvWriter.CSV_HEADER.length + 1);
+
+    static {
+        CSV_HEADER[CSV_HEADER.length - 1] = "Deleted";
+    }
+
+    private final ICsvListWriter listWriter;
+    private long rowsWritten;
+
+    public CustomerCsvDeltaWriter(Writer writer) {
+        this.listWriter = new CsvListWriter(writer, CsvPreference.STANDARD_PREFERENCE);
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        listWriter.writeHeader(CSV_HEADER);
+        listWriter.flush();
+    }
+
+    @Override
+    public void write(Customer customer) {
+        CommunicationMethods contacts = customer.getContacts();
+        if (contacts == null) {
+            writeRow(customer.getName(), customer.getSurname(), customer.getPeselNumber(),
+                    null, null, null, null, null, null);
+        } else {
+            writeRow(customer.getName(), customer.getSurname(), customer.getPeselNumber(),
+                    contacts.getEmailAddress(), contacts.getResidenceAddress(), contacts.getRegisteredAddress(),
+                    contacts.getPrivatePhoneNumber(), contacts.getBusinessPhoneNumber(), null);
+        }
+    }
+
+    @Override
+    public void writeDeleted(String peselNumber) {
+        writeRow(null, null, peselNumber, null, null, null, null, null, "true");
+    }
+
+    /**
+     * Pushes buffered rows to the underlying writer every {@value CustomerCsvWriter#FLUSH_INTERVAL} rows.
+     */
+    private void writeRow(Object... columns) {
+        try {
+            listWriter.write(columns);
+            if (++rowsWritten % CustomerCsvWriter.FLUSH_INTERVAL == 0) {
+                listWriter.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        listWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        listWriter.close();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import org.supercsv.io.dozer.CsvDozerBeanReader;
+import org.supercsv.io.dozer.ICsvDozerBeanReader;
+import org.supercsv.prefs.CsvPreference;
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads customers from CSV in the layout written by {@link CustomerCsvWriter}, one row at a time.
+ */
+public class CustomerCsvReader implements Closeable {
+    private final ICsvDozerBeanReader beanReader;
+
+    public CustomerCsvReader(Reader reader) {
+        this.beanReader = new CsvDozerBeanReader(reader, CsvPreference.STANDARD_PREFERENCE);
+        this.beanReader.configureBeanMapping(Customer.class, CustomerCsvWriter.FIELD_MAPPINGS);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the header differs from the export header
+     */
+    public void readHeader() throws IOException {
+        String[] header = beanReader.getHeader(true);
+        if (!Arrays.equals(header, CustomerCsvWriter.CSV_HEADER)) {
+            throw new IllegalArgumentException("Expected CSV header: " + String.join(",", CustomerCsvWriter.CSV_HEADER));
+        }
+    }
+
+    /**
+     * @return next customer or null at the end of input
+     * @throws org.supercsv.exception.SuperCsvException when the current row cannot be read,
+     *                                                   reading may continue with the next row
+     */
+    public Customer read() throws IOException {
+        Customer customer = beanReader.read(Customer.class);
+        if (customer != null && isEmpty(customer.getContacts())) {
+            customer.setContacts(null);
+        }
+        return customer;
+    }
+
+    public int getLineNumber() {
+        return beanReader.getLineNumber();
+    }
+
+    private boolean isEmpty(CommunicationMethods contacts) {
+        return contacts == null
+                || contacts.getEmailAddress() == null
+                && contacts.getResidenceAddress() == null
+                && contacts.getRegisteredAddress() == null
+                && contacts.getPrivatePhoneNumber() == null
+                && contacts.getBusinessPhoneNumber() == null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        beanReader.close();
+    }
+}
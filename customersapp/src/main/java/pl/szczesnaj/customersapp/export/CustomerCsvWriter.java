@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import org.supercsv.io.dozer.CsvDozerBeanWriter;
+import org.supercsv.io.dozer.ICsvDozerBeanWriter;
+import org.supercsv.prefs.CsvPreference;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+public class CustomerCsvWriter implements CustomerWriter {
+    public static final String[] CSV_HEADER = {"Name", "Surname", "PESEL number",
+            "Email", "Residence Address", "Registered Address",
+            "Private Phone Number", "Business Phone Number"};
+    public static final String[] FIELD_MAPPINGS = {"name", "surname", "peselNumber",
+            "contacts.emailAddress", "contacts.residenceAddress", "contacts.registeredAddress",
+            "contacts.privatePhoneNumber", "contacts.businessPhoneNumber"};
+    static final int FLUSH_INTERVAL = 500;
+
+    private final ICsvDozerBeanWriter beanWriter;
+    private long rowsWritten;
+
+    public CustomerCsvWriter(Writer writer) {
+        this.beanWriter = new CsvDozerBeanWriter(writer, CsvPreference.STANDARD_PREFERENCE);
+        this.beanWriter.configureBeanMapping(Customer.class, FIELD_MAPPINGS);
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        beanWriter.writeHeader(CSV_HEADER);
+        beanWriter.flush();
+    }
+
+    /**
+     * Writes a single row and pushes buffered rows to the underlying writer
+     * every {@value #FLUSH_INTERVAL} rows, so the client starts receiving data
+     * while the rest of the table is still being read.
+     */
+    @Override
+    public void write(Customer customer) {
+        try {
+            beanWriter.write(customer);
+            if (++rowsWritten % FLUSH_INTERVAL == 0) {
+                beanWriter.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        beanWriter.flush();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        beanWriter.close();
+    }
+}
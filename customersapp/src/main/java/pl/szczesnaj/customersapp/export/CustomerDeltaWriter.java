@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+/**
+ * Writes a delta export: changed customers and tombstones of deleted ones.
+ */
+public interface CustomerDeltaWriter extends CustomerWriter {
+
+    /**
+     * Writes a tombstone of a deleted customer, marked as deleted in a way
+     * the format's reader tells apart from customers.
+     *
+     * @throws java.io.UncheckedIOException when the tombstone cannot be written
+     */
+    void writeDeleted(String peselNumber);
+}
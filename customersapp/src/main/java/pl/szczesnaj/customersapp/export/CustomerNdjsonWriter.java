@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes customers as newline delimited JSON, one object per line in the same shape
+ * as returned by the REST API, readable back by {@code POST /customers/batch}.
+ */
+public class CustomerNdjsonWriter implements CustomerDeltaWriter {
+    static final int FLUSH_INTERVAL = 500;
+
+    private final ObjectWriter objectWriter;
+    private final JsonGenerator generator;
+    private long rowsWritten;
+
+    public CustomerNdjsonWriter(OutputStream out, ObjectMapper objectMapper) throws IOException {
+        this.objectWriter = objectMapper.writerFor(Customer.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.generator = objectMapper.getFactory().createGenerator(out);
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void writeHeader() {
+    }
+
+    /**
+     * Writes a single line and pushes buffered lines to the underlying stream
+     * every {@value #FLUSH_INTERVAL} customers.
+     */
+    @Override
+    public void write(Customer customer) {
+        try {
+            objectWriter.writeValue(generator, customer);
+            generator.writeRaw('\n');
+            if (++rowsWritten % FLUSH_INTERVAL == 0) {
+                generator.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes {@code {"peselNumber":"...","deleted":true}}, customers never have a "deleted" property.
+     */
+    @Override
+    public void writeDeleted(String peselNumber) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("peselNumber", peselNumber);
+            generator.writeBooleanField("deleted", true);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            if (++rowsWritten % FLUSH_INTERVAL == 0) {
+                generator.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes customers one at a time in one of the {@link ExportFormat export formats}.
+ */
+public interface CustomerWriter extends Closeable {
+
+    void writeHeader() throws IOException;
+
+    /**
+     * @throws java.io.UncheckedIOException when the customer cannot be written
+     */
+    void write(Customer customer);
+
+    void flush() throws IOException;
+}
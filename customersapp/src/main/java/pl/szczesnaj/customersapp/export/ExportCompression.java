@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings of customer exports, chosen by name or by the {@code Accept-Encoding} header.
+ */
+public enum ExportCompression {
+    NONE("identity"),
+    GZIP("gzip"),
+    ZSTD("zstd");
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final String coding;
+
+    ExportCompression(String coding) {
+        this.coding = coding;
+    }
+
+    /**
+     * @return value for the {@code Content-Encoding} header
+     */
+    public String getCoding() {
+        return coding;
+    }
+
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return switch (this) {
+            case NONE -> out;
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE);
+            case ZSTD -> new ZstdOutputStream(out);
+        };
+    }
+
+    /**
+     * @throws IllegalArgumentException when there is no compression of that name
+     */
+    public static ExportCompression fromName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Picks zstd over gzip when the client accepts both, ignoring codings with zero quality.
+     */
+    public static ExportCompression negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return NONE;
+        }
+        boolean gzip = false;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (parts.length > 1 && parts[1].trim().matches("q\\s*=\\s*0(\\.0*)?")) {
+                continue;
+            }
+            if (coding.equals(ZSTD.coding)) {
+                return ZSTD;
+            }
+            gzip |= coding.equals(GZIP.coding);
+        }
+        return gzip ? GZIP : NONE;
+    }
+}
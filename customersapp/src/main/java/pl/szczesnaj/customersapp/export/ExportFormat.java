@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Formats of customer exports, chosen by name or by the {@code Accept} header.
+ */
+public enum ExportFormat {
+    CSV(new MediaType("text", "csv", StandardCharsets.UTF_8), ".csv"),
+    NDJSON(MediaType.APPLICATION_NDJSON, ".ndjson"),
+    COLUMNAR(new MediaType("application", "vnd.customers.columnar"), ".customers");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    ExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public CustomerWriter open(OutputStream out, ObjectMapper objectMapper) throws IOException {
+        return switch (this) {
+            case CSV -> new CustomerCsvWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            case NDJSON -> new CustomerNdjsonWriter(out, objectMapper);
+            case COLUMNAR -> new CustomerColumnarWriter(out);
+        };
+    }
+
+    /**
+     * Opens a writer of a delta export, which also writes {@link CustomerDeltaWriter#writeDeleted tombstones}.
+     * Only CSV differs from the full export, by its trailing "Deleted" column.
+     */
+    public CustomerDeltaWriter openDelta(OutputStream out, ObjectMapper objectMapper) throws IOException {
+        return switch (this) {
+            case CSV -> new CustomerCsvDeltaWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            case NDJSON -> new CustomerNdjsonWriter(out, objectMapper);
+            case COLUMNAR -> new CustomerColumnarWriter(out);
+        };
+    }
+
+    /**
+     * @throws IllegalArgumentException when there is no format of that name
+     */
+    public static ExportFormat fromName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Picks the format for the media types of an {@code Accept} header, preferring higher quality
+     * and then the order of the header. Wildcards select the first format, which is CSV.
+     *
+     * @return the format, or empty when none of the formats is acceptable
+     */
+    public static Optional<ExportFormat> negotiate(List<MediaType> accepted) {
+        if (accepted.isEmpty()) {
+            return Optional.of(CSV);
+        }
+        List<MediaType> byQuality = new ArrayList<>(accepted);
+        byQuality.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : byQuality) {
+            if (mediaType.getQualityValue() == 0) {
+                break;
+            }
+            for (ExportFormat format : values()) {
+                if (mediaType.isCompatibleWith(format.mediaType)) {
+                    return Optional.of(format);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+}
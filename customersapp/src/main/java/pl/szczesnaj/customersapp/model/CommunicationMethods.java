@@ -5,17 +5,36 @@
 
 package pl.szczesnaj.customersapp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.type.SqlTypes;
 
+import java.time.Instant;
+
+@Table(
+        name = "COMMUNICATION_METHODS",
+        indexes = @Index(name = "IX_COMMUNICATION_METHODS_UPDATED_AT", columnList = "UPDATED_AT")
+)
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 public class CommunicationMethods {
@@ -36,4 +55,16 @@ public class CommunicationMethods {
     @Size(min = 0, max = 11, message = "Business phone number")
     @Pattern(regexp = "[\\d]{9,11}", message = "Business phone number should contain only digits")
     private String businessPhoneNumber;
+
+    @CreationTimestamp
+    @Column(name = "CREATED_AT", updatable = false)
+    @JdbcTypeCode(SqlTypes.TIMESTAMP)
+    @JsonIgnore
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "UPDATED_AT")
+    @JdbcTypeCode(SqlTypes.TIMESTAMP)
+    @JsonIgnore
+    private Instant updatedAt;
 }
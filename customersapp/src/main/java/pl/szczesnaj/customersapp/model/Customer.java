@@ -5,19 +5,39 @@
 
 package pl.szczesnaj.customersapp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+import java.time.LocalDate;
 
 @Table(
         name = "CUSTOMER",
         uniqueConstraints =
-        @UniqueConstraint(columnNames = {"peselNumber"})
+        @UniqueConstraint(name = "UX_CUSTOMER_PESEL", columnNames = {"PESEL"}),
+        indexes = {
+                @Index(name = "IX_CUSTOMER_SURNAME_ID", columnList = "SURNAME, ID"),
+                @Index(name = "IX_CUSTOMER_NAME_ID", columnList = "NAME, ID"),
+                @Index(name = "IX_CUSTOMER_BIRTH_DATE_ID", columnList = "BIRTH_DATE, ID"),
+                @Index(name = "IX_CUSTOMER_UPDATED_AT", columnList = "UPDATED_AT")
+        }
 )
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 public class Customer {
@@ -28,8 +48,18 @@ public class Customer {
     @NotEmpty(message = "PESEL number cannot be null or empty")
     @Size(min = 11, max = 11, message = "PESEL should be 11 digits")
     @Pattern(regexp="[\\d]{11}", message = "PESEL should contain only digits")
+    @Column(name = "PESEL")
+    @Convert(converter = PeselNumberConverter.class)
     private String peselNumber;
 
+    /**
+     * Derived from the PESEL number, null when the number holds no valid date.
+     */
+    @Column(name = "BIRTH_DATE")
+    @Setter(AccessLevel.NONE)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private LocalDate birthDate;
+
     @NotEmpty(message = "Name cannot be null or empty")
     @Size(min = 3, max = 30, message = "Name between 3 and 30 characters")
     private String name;
@@ -41,4 +71,24 @@ public class Customer {
     @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
     @PrimaryKeyJoinColumn
     private CommunicationMethods contacts;
+
+    @CreationTimestamp
+    @Column(name = "CREATED_AT", updatable = false)
+    @JdbcTypeCode(SqlTypes.TIMESTAMP)
+    @JsonIgnore
+    private Instant createdAt;
+
+    /**
+     * Time of the last change of this row; changes of contacts are tracked in their own row.
+     */
+    @UpdateTimestamp
+    @Column(name = "UPDATED_AT")
+    @JdbcTypeCode(SqlTypes.TIMESTAMP)
+    @JsonIgnore
+    private Instant updatedAt;
+
+    public void setPeselNumber(String peselNumber) {
+        this.peselNumber = peselNumber;
+        this.birthDate = PeselNumber.birthDate(peselNumber);
+    }
 }
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.model;
+
+import java.time.Instant;
+
+/**
+ * Entry of the customer change log, written in the transaction of every customer write.
+ * Sequence numbers grow with each entry; a customer deleted and added again gets a new id.
+ */
+public record CustomerChange(long sequence, long customerId, String peselNumber, Type type, Instant changedAt) {
+
+    public enum Type {
+        ADDED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.model;
+
+import java.time.LocalDate;
+
+/**
+ * Customer with contacts, as returned by lookups. Immutable, so it can be cached and
+ * shared between requests.
+ */
+public record CustomerDetails(long id,
+                              String peselNumber,
+                              LocalDate birthDate,
+                              String name,
+                              String surname,
+                              Contacts contacts) implements CustomerView {
+
+    /**
+     * Row of a query left joining contacts, which are absent when {@code contactsId} is null.
+     */
+    public CustomerDetails(long id, String peselNumber, LocalDate birthDate, String name, String surname,
+                           Long contactsId, String emailAddress, String residenceAddress, String registeredAddress,
+                           String privatePhoneNumber, String businessPhoneNumber) {
+        this(id, peselNumber, birthDate, name, surname, contactsId == null ? null
+                : new Contacts(emailAddress, residenceAddress, registeredAddress, privatePhoneNumber, businessPhoneNumber));
+    }
+
+    public static CustomerDetails of(Customer customer) {
+        CommunicationMethods contacts = customer.getContacts();
+        return new CustomerDetails(customer.getId(), customer.getPeselNumber(), customer.getBirthDate(),
+                customer.getName(), customer.getSurname(), contacts == null ? null
+                : new Contacts(contacts.getEmailAddress(), contacts.getResidenceAddress(),
+                contacts.getRegisteredAddress(), contacts.getPrivatePhoneNumber(), contacts.getBusinessPhoneNumber()));
+    }
+
+    public record Contacts(String emailAddress,
+                           String residenceAddress,
+                           String registeredAddress,
+                           String privatePhoneNumber,
+                           String businessPhoneNumber) {
+    }
+}
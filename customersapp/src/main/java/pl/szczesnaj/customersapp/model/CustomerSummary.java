@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.model;
+
+import java.time.LocalDate;
+
+/**
+ * Customer as listed in pages, without contacts.
+ */
+public record CustomerSummary(long id,
+                              String peselNumber,
+                              LocalDate birthDate,
+                              String name,
+                              String surname) implements CustomerView {
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.model;
+
+import java.time.LocalDate;
+
+/**
+ * Columns shared by the read-only customer projections.
+ */
+public interface CustomerView {
+    long id();
+
+    String peselNumber();
+
+    LocalDate birthDate();
+
+    String name();
+
+    String surname();
+}
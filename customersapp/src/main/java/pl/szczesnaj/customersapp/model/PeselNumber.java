@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.model;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * PESEL number helpers. The number is always 11 digits, so it is stored packed into a {@code long},
+ * and holds the birth date: two digits of the year, the month with the century added to it
+ * (+80 for 1800s, +0 for 1900s, +20 for 2000s, +40 for 2100s, +60 for 2200s) and the day.
+ */
+public final class PeselNumber {
+    public static final int LENGTH = 11;
+    private static final int[] CENTURIES = {1900, 2000, 2100, 2200, 1800};
+
+    private PeselNumber() {
+    }
+
+    public static boolean isValid(String peselNumber) {
+        if (peselNumber == null || peselNumber.length() != LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            char c = peselNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the number is not 11 digits
+     */
+    public static long pack(String peselNumber) {
+        if (!isValid(peselNumber)) {
+            throw new IllegalArgumentException("PESEL should be 11 digits: " + peselNumber);
+        }
+        return Long.parseLong(peselNumber);
+    }
+
+    /**
+     * @return the 11 digits, with the leading zeros lost by {@link #pack(String)}
+     */
+    public static String unpack(long packed) {
+        String digits = Long.toString(packed);
+        return "0".repeat(LENGTH - digits.length()) + digits;
+    }
+
+    /**
+     * @return the birth date, or null when the number is not 11 digits or holds no valid date
+     */
+    public static LocalDate birthDate(String peselNumber) {
+        if (!isValid(peselNumber)) {
+            return null;
+        }
+        int year = Integer.parseInt(peselNumber.substring(0, 2));
+        int month = Integer.parseInt(peselNumber.substring(2, 4));
+        int day = Integer.parseInt(peselNumber.substring(4, 6));
+        try {
+            return LocalDate.of(CENTURIES[(month - 1) / 20] + year, (month - 1) % 20 + 1, day);
+        } catch (DateTimeException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+}
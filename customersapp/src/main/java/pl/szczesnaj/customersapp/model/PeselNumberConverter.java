@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores PESEL numbers as BIGINT, restoring the leading zeros when reading.
+ */
+@Converter
+public class PeselNumberConverter implements AttributeConverter<String, Long> {
+
+    /**
+     * @throws IllegalArgumentException when the number is not 11 digits
+     */
+    @Override
+    public Long convertToDatabaseColumn(String peselNumber) {
+        return peselNumber != null ? PeselNumber.pack(peselNumber) : null;
+    }
+
+    @Override
+    public String convertToEntityAttribute(Long packed) {
+        return packed != null ? PeselNumber.unpack(packed) : null;
+    }
+}
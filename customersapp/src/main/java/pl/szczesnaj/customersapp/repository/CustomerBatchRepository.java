@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.repository;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Inserts customers with plain JDBC batches. Hibernate cannot batch inserts of
+ * entities with IDENTITY ids, which makes it unusable for bulk loads.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CustomerBatchRepository {
+    private static final String INSERT_CUSTOMER =
+            "insert into CUSTOMER (PESEL, NAME, SURNAME, BIRTH_DATE, CREATED_AT, UPDATED_AT) values (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_CONTACTS =
+            "insert into COMMUNICATION_METHODS (ID, EMAIL_ADDRESS, RESIDENCE_ADDRESS, REGISTERED_ADDRESS, "
+                    + "PRIVATE_PHONE_NUMBER, BUSINESS_PHONE_NUMBER, CREATED_AT, UPDATED_AT) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    /**
+     * Inserts all customers and their contacts, setting generated ids and creation times on the given
+     * objects. Contacts share the id of their customer, as required by the {@code @PrimaryKeyJoinColumn}
+     * mapping. Must run in a transaction.
+     */
+    public void insertAll(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return;
+        }
+        invalidateQueryCache();
+        Instant now = Instant.now();
+        Timestamp timestamp = Timestamp.from(now);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_CUSTOMER, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Customer customer = customers.get(i);
+                        ps.setLong(1, PeselNumber.pack(customer.getPeselNumber()));
+                        ps.setString(2, customer.getName());
+                        ps.setString(3, customer.getSurname());
+                        if (customer.getBirthDate() != null) {
+                            ps.setObject(4, customer.getBirthDate());
+                        } else {
+                            ps.setNull(4, Types.DATE);
+                        }
+                        ps.setTimestamp(5, timestamp);
+                        ps.setTimestamp(6, timestamp);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return customers.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < customers.size(); i++) {
+            Number id = (Number) keys.get(i).values().iterator().next();
+            customers.get(i).setId(id.longValue());
+            customers.get(i).setCreatedAt(now);
+            customers.get(i).setUpdatedAt(now);
+        }
+
+        List<Customer> withContacts = customers.stream()
+                .filter(c -> c.getContacts() != null)
+                .toList();
+        jdbcTemplate.batchUpdate(INSERT_CONTACTS, withContacts, withContacts.size(), (ps, customer) -> {
+            CommunicationMethods contacts = customer.getContacts();
+            contacts.setId(customer.getId());
+            ps.setLong(1, contacts.getId());
+            ps.setString(2, contacts.getEmailAddress());
+            ps.setString(3, contacts.getResidenceAddress());
+            ps.setString(4, contacts.getRegisteredAddress());
+            ps.setString(5, contacts.getPrivatePhoneNumber());
+            ps.setString(6, contacts.getBusinessPhoneNumber());
+            ps.setTimestamp(7, timestamp);
+            ps.setTimestamp(8, timestamp);
+            contacts.setCreatedAt(now);
+            contacts.setUpdatedAt(now);
+        });
+    }
+
+    /**
+     * Hibernate does not see these inserts, so cached query results over the customer tables are
+     * invalidated the way Hibernate does it for its own bulk statements: marked stale while the
+     * transaction runs and once more after it completes, so a query which read the tables
+     * before the commit does not cache its result.
+     */
+    private void invalidateQueryCache() {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        String[] spaces = Stream.of(Customer.class, CommunicationMethods.class)
+                .map(entity -> session.getFactory().getMappingMetamodel().getEntityDescriptor(entity))
+                .flatMap(persister -> Stream.of(persister.getQuerySpaces()))
+                .map(String.class::cast)
+                .toArray(String[]::new);
+        TimestampsCache timestampsCache = session.getFactory().getCache().getTimestampsCache();
+        timestampsCache.preInvalidate(spaces, session);
+        session.getActionQueue().registerProcess(
+                (success, completedSession) -> timestampsCache.invalidate(spaces, completedSession));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.repository;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * Liquibase change filling {@code CUSTOMER.BIRTH_DATE} of existing customers from their PESEL numbers.
+ */
+public class CustomerBirthDateChange implements CustomTaskChange {
+    static final int BATCH_SIZE = 1000;
+
+    private long updated;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try (Statement select = connection.createStatement();
+             PreparedStatement update = connection.prepareStatement(
+                     "update CUSTOMER set BIRTH_DATE = ? where ID = ?")) {
+            select.setFetchSize(BATCH_SIZE);
+            try (ResultSet customers = select.executeQuery("select ID, PESEL from CUSTOMER where BIRTH_DATE is null")) {
+                while (customers.next()) {
+                    LocalDate birthDate = PeselNumber.birthDate(customers.getString(2));
+                    if (birthDate == null) {
+                        continue;
+                    }
+                    update.setDate(1, Date.valueOf(birthDate));
+                    update.setLong(2, customers.getLong(1));
+                    update.addBatch();
+                    if (++updated % BATCH_SIZE == 0) {
+                        update.executeBatch();
+                    }
+                }
+            }
+            update.executeBatch();
+        } catch (SQLException e) {
+            throw new CustomChangeException(e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Birth dates of " + updated + " customers filled";
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerChange;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of customer writes in the {@code CUSTOMER_CHANGE_LOG} table, kept with plain
+ * JDBC as it is never read as entities. Entries are written in the transaction of the write
+ * they describe, so the log holds exactly the committed changes.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CustomerChangeLogRepository {
+    private static final String INSERT_CHANGE =
+            "insert into CUSTOMER_CHANGE_LOG (CUSTOMER_ID, PESEL, CHANGE_TYPE, CHANGED_AT) values (?, ?, ?, ?)";
+    private static final String SELECT_CHANGES =
+            "select SEQ, CUSTOMER_ID, PESEL, CHANGE_TYPE, CHANGED_AT from CUSTOMER_CHANGE_LOG";
+    private static final RowMapper<CustomerChange> CHANGE_MAPPER = (rs, rowNum) -> new CustomerChange(
+            rs.getLong("SEQ"),
+            rs.getLong("CUSTOMER_ID"),
+            PeselNumber.unpack(rs.getLong("PESEL")),
+            CustomerChange.Type.valueOf(rs.getString("CHANGE_TYPE")),
+            rs.getTimestamp("CHANGED_AT").toInstant());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Must run in the transaction of the write.
+     */
+    public void append(CustomerChange.Type type, List<Customer> customers, Instant changedAt) {
+        Timestamp timestamp = Timestamp.from(changedAt);
+        jdbcTemplate.batchUpdate(INSERT_CHANGE, customers, customers.size(), (ps, customer) -> {
+            ps.setLong(1, customer.getId());
+            ps.setLong(2, PeselNumber.pack(customer.getPeselNumber()));
+            ps.setString(3, type.name());
+            ps.setTimestamp(4, timestamp);
+        });
+    }
+
+    /**
+     * @return sequence number of the last change, 0 when there are none
+     */
+    public long findLastSequence() {
+        Long last = jdbcTemplate.queryForObject("select max(SEQ) from CUSTOMER_CHANGE_LOG", Long.class);
+        return last != null ? last : 0;
+    }
+
+    /**
+     * @return up to {@code limit} changes after the given sequence number, ordered by sequence number
+     */
+    public List<CustomerChange> findChanges(long afterSequence, int limit) {
+        return jdbcTemplate.query(SELECT_CHANGES + " where SEQ > ? order by SEQ limit ?",
+                CHANGE_MAPPER, afterSequence, limit);
+    }
+
+    /**
+     * Streams PESEL numbers of customers deleted at or after the given time and not added again.
+     * The stream must be closed.
+     */
+    public Stream<String> streamDeletedSince(Instant since) {
+        return jdbcTemplate.queryForStream("select distinct l.PESEL from CUSTOMER_CHANGE_LOG l "
+                        + "where l.CHANGE_TYPE = ? and l.CHANGED_AT >= ? "
+                        + "and not exists (select 1 from CUSTOMER c where c.PESEL = l.PESEL)",
+                (rs, rowNum) -> PeselNumber.unpack(rs.getLong(1)),
+                CustomerChange.Type.DELETED.name(), Timestamp.from(since));
+    }
+
+    /**
+     * Streams changes after the given sequence number, and also those made at or after
+     * {@code changedSince} whatever their sequence number, ordered by sequence number.
+     * The stream must be closed.
+     */
+    public Stream<CustomerChange> streamChanges(long afterSequence, Instant changedSince) {
+        return jdbcTemplate.queryForStream(SELECT_CHANGES + " where SEQ > ? or CHANGED_AT >= ? order by SEQ",
+                CHANGE_MAPPER, afterSequence, Timestamp.from(changedSince));
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.repository;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerView;
+
+import java.util.List;
+
+public interface CustomerProjectionRepository {
+
+    /**
+     * Reads customers matching the specification straight into {@link pl.szczesnaj.customersapp.model.CustomerSummary}
+     * or {@link pl.szczesnaj.customersapp.model.CustomerDetails}, so no entities are loaded into the persistence context.
+     *
+     * @param specification may be null
+     * @param cacheable     whether the result is kept in the Hibernate query cache
+     */
+    <T extends CustomerView> List<T> findProjected(Class<T> projection, Specification<Customer> specification,
+                                                   Sort sort, long offset, int limit, boolean cacheable);
+
+    /**
+     * @param specification may be null
+     * @param cacheable     whether the count is kept in the Hibernate query cache
+     */
+    long countMatching(Specification<Customer> specification, boolean cacheable);
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.CustomerSummary;
+import pl.szczesnaj.customersapp.model.CustomerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+class CustomerProjectionRepositoryImpl implements CustomerProjectionRepository {
+    private final EntityManager entityManager;
+
+    @Override
+    public <T extends CustomerView> List<T> findProjected(Class<T> projection, Specification<Customer> specification,
+                                                          Sort sort, long offset, int limit, boolean cacheable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(projection);
+        Root<Customer> root = query.from(Customer.class);
+        query.select(cb.construct(projection, columns(projection, root)));
+        where(query, root, cb, specification);
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        return entityManager.createQuery(query)
+                .setFirstResult(Math.toIntExact(offset))
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_CACHEABLE, cacheable)
+                .getResultList();
+    }
+
+    @Override
+    public long countMatching(Specification<Customer> specification, boolean cacheable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Customer> root = query.from(Customer.class);
+        query.select(cb.count(root));
+        where(query, root, cb, specification);
+        return entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_CACHEABLE, cacheable)
+                .getSingleResult();
+    }
+
+    private static void where(CriteriaQuery<?> query, Root<Customer> root, CriteriaBuilder cb,
+                              Specification<Customer> specification) {
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+    }
+
+    /**
+     * Constructor arguments of the projection. Contacts of {@link CustomerDetails} are left
+     * joined here, specifications filtering on contacts reuse that join.
+     */
+    private static Selection<?>[] columns(Class<?> projection, Root<Customer> root) {
+        List<Selection<?>> columns = new ArrayList<>(List.of(root.get("id"), root.get("peselNumber"),
+                root.get("birthDate"), root.get("name"), root.get("surname")));
+        if (projection == CustomerDetails.class) {
+            Join<Customer, CommunicationMethods> contacts = root.join("contacts", JoinType.LEFT);
+            columns.addAll(List.of(contacts.get("id"), contacts.get("emailAddress"), contacts.get("residenceAddress"),
+                    contacts.get("registeredAddress"), contacts.get("privatePhoneNumber"),
+                    contacts.get("businessPhoneNumber")));
+        } else if (projection != CustomerSummary.class) {
+            throw new IllegalArgumentException("Unsupported projection: " + projection.getName());
+        }
+        return columns.toArray(Selection[]::new);
+    }
+}
@@ -5,26 +5,93 @@
 
 package pl.szczesnaj.customersapp.repository;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Repository
-public interface CustomerRepository extends JpaRepository<Customer, Long> {
+public interface CustomerRepository extends JpaRepository<Customer, Long>, JpaSpecificationExecutor<Customer>,
+        CustomerProjectionRepository, CustomerScanRepository {
+    String EXPORT_FETCH_SIZE = "1000";
+    String SELECT_DETAILS = "select new pl.szczesnaj.customersapp.model.CustomerDetails("
+            + "c.id, c.peselNumber, c.birthDate, c.name, c.surname, m.id, m.emailAddress, m.residenceAddress, "
+            + "m.registeredAddress, m.privatePhoneNumber, m.businessPhoneNumber) "
+            + "from Customer c left join c.contacts m";
 
-    @Query("select distinct c from Customer c left join fetch c.contacts")
-    List<Customer> findAllCustomers();
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("select c from Customer c left join fetch c.contacts order by c.id")
+    Stream<Customer> streamAllCustomers();
 
-    @Query("select distinct c from Customer c left join fetch c.contacts")
-    Page<Customer> findAllCustomers(Pageable page);
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("select c from Customer c left join fetch c.contacts where c.updatedAt >= :since order by c.updatedAt, c.id")
+    Stream<Customer> streamCustomersModifiedSince(@Param("since") Instant since);
 
-    @Query("select c from Customer c where peselNumber = :peselNumber")
+    /**
+     * Customers not changed since the given time whose contacts were.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("select c from Customer c join fetch c.contacts m where m.updatedAt >= :since and c.updatedAt < :since "
+            + "order by m.updatedAt, c.id")
+    Stream<Customer> streamCustomersWithContactsModifiedSince(@Param("since") Instant since);
+
+    /**
+     * Scans all customers in id order through a database cursor, see {@link #scan}.
+     *
+     * @return number of scanned customers
+     */
+    default long forEachCustomer(Consumer<Customer> consumer) {
+        return scan(streamAllCustomers(), consumer);
+    }
+
+    /**
+     * Scans customers changed since the given time, then customers whose only change since then
+     * was to their contacts, see {@link #scan}.
+     *
+     * @return number of scanned customers
+     */
+    default long forEachCustomerModifiedSince(Instant since, Consumer<Customer> consumer) {
+        return scan(streamCustomersModifiedSince(since), consumer)
+                + scan(streamCustomersWithContactsModifiedSince(since), consumer);
+    }
+
+    @Query("select c from Customer c left join fetch c.contacts where c.peselNumber = :peselNumber")
     Optional<Customer> findCustomerByPeselNum(@Param("peselNumber") String peselNumber);
+
+    @Query(SELECT_DETAILS + " where c.peselNumber = :peselNumber")
+    Optional<CustomerDetails> findCustomerDetailsByPeselNum(@Param("peselNumber") String peselNumber);
+
+    @Query(SELECT_DETAILS + " where c.id in :ids")
+    List<CustomerDetails> findCustomerDetailsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select c.peselNumber from Customer c where c.peselNumber in :peselNumbers")
+    List<String> findExistingPeselNumbers(@Param("peselNumbers") Collection<String> peselNumbers);
 }
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.repository;
+
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public interface CustomerScanRepository {
+    int SCAN_CLEAR_INTERVAL = 1000;
+
+    /**
+     * Hands customers of the stream one by one to the consumer and closes the stream. The persistence
+     * context is cleared every {@value #SCAN_CLEAR_INTERVAL} customers, so memory usage does not depend
+     * on the number of scanned customers.
+     *
+     * @return number of scanned customers
+     */
+    long scan(Stream<Customer> customers, Consumer<Customer> consumer);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.repository;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+class CustomerScanRepositoryImpl implements CustomerScanRepository {
+    private final EntityManager entityManager;
+
+    @Override
+    public long scan(Stream<Customer> stream, Consumer<Customer> consumer) {
+        long scanned = 0;
+        try (Stream<Customer> customers = stream) {
+            Iterator<Customer> iterator = customers.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                if (++scanned % SCAN_CLEAR_INTERVAL == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        return scanned;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of customers by packed PESEL number. Unknown PESEL numbers are cached too.
+ * Size, TTL and statistics are configured with {@code spring.cache.caffeine.spec}.
+ * <p>
+ * Entries are evicted after the writing transaction commits. A lookup which started
+ * before that eviction may have read the old row, so its result is not stored. The check
+ * and the store are one atomic step on the entry, so an eviction cannot run between them.
+ */
+@Component
+class CustomerCache {
+    static final String CUSTOMERS_CACHE = "customers";
+
+    private final CaffeineCache cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    CustomerCache(CacheManager cacheManager) {
+        this.cache = (CaffeineCache) Objects.requireNonNull(cacheManager.getCache(CUSTOMERS_CACHE));
+    }
+
+    Optional<CustomerDetails> get(String peselNumber, Function<String, Optional<CustomerDetails>> loader) {
+        long key = PeselNumber.pack(peselNumber);
+        Cache.ValueWrapper cached = cache.get(key);
+        if (cached != null) {
+            return Optional.ofNullable((CustomerDetails) cached.get());
+        }
+        long invalidationsBeforeLoad = invalidations.get();
+        Optional<CustomerDetails> customer = loader.apply(peselNumber);
+        // evict() counts before it evicts: either the count changed or the eviction comes after the store
+        cache.getNativeCache().asMap().compute(key, (k, current) ->
+                current == null && invalidationsBeforeLoad == invalidations.get()
+                        ? customer.<Object>map(details -> details).orElse(NullValue.INSTANCE)
+                        : current);
+        return customer;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void evict(CustomersChangedEvent event) {
+        invalidations.incrementAndGet();
+        event.customers().forEach(customer -> cache.evict(PeselNumber.pack(customer.getPeselNumber())));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pl.szczesnaj.customersapp.model.CustomerChange;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.repository.CustomerChangeLogRepository;
+import pl.szczesnaj.customersapp.repository.CustomerRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Change log for consumers syncing incrementally: each batch continues after the sequence number
+ * returned by the previous one.
+ * <p>
+ * Sequence numbers are taken at insert, so a transaction may commit after one with a higher
+ * number, leaving a gap in the visible sequence numbers meanwhile. A batch therefore stops at the
+ * first gap until the change after it is older than {@code customers.changes.settle-time}; the log
+ * entry is the last statement before the commit, so by then the missing change was committed or
+ * rolled back. Gaps left by rollbacks are passed once they are that old.
+ */
+@Service
+@RequiredArgsConstructor
+@Timed(value = CustomerMetrics.SERVICE_TIMER, histogram = true)
+public class CustomerChangeFeed {
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private final CustomerChangeLogRepository changeLogRepository;
+    private final CustomerRepository customerRepository;
+
+    @Value("${customers.changes.settle-time:2s}")
+    private Duration settleTime;
+
+    /**
+     * @param since sequence number of the last change seen, 0 to read from the beginning
+     * @return changes after {@code since}; {@code nextCursor} is the sequence number to pass next,
+     * {@code hasNext} tells whether more changes can be read right away
+     */
+    @Transactional(readOnly = true)
+    public CustomerSlice<CustomerChangeItem> getChanges(long since, int limit) {
+        int size = Math.min(Math.max(limit, 1), MAX_BATCH_SIZE);
+        Instant settled = Instant.now().minus(settleTime);
+        List<CustomerChange> changes = new ArrayList<>();
+        long previous = since;
+        for (CustomerChange change : changeLogRepository.findChanges(since, size + 1)) {
+            if (change.sequence() != previous + 1 && change.changedAt().isAfter(settled)) {
+                break;
+            }
+            changes.add(change);
+            previous = change.sequence();
+        }
+        boolean hasNext = changes.size() > size;
+        if (hasNext) {
+            changes = changes.subList(0, size);
+        }
+
+        List<Long> ids = changes.stream()
+                .filter(change -> change.type() != CustomerChange.Type.DELETED)
+                .map(CustomerChange::customerId)
+                .distinct()
+                .toList();
+        Map<Long, CustomerDetails> customers = ids.isEmpty() ? Map.of()
+                : customerRepository.findCustomerDetailsByIds(ids).stream()
+                .collect(Collectors.toMap(CustomerDetails::id, Function.identity()));
+
+        List<CustomerChangeItem> content = changes.stream()
+                .map(change -> new CustomerChangeItem(change.sequence(), change.peselNumber(), change.type(),
+                        change.changedAt(), customers.get(change.customerId())))
+                .toList();
+        long next = changes.isEmpty() ? since : changes.get(changes.size() - 1).sequence();
+        return new CustomerSlice<>(content, content.size(), hasNext, String.valueOf(next), null);
+    }
+
+    /**
+     * @return sequence number of the last change, 0 when there are none
+     */
+    public long getLastSequence() {
+        return changeLogRepository.findLastSequence();
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import pl.szczesnaj.customersapp.model.CustomerChange;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+
+import java.time.Instant;
+
+/**
+ * Entry of the change feed. {@code customer} holds the current state of the customer, not the
+ * state right after the change, and is absent once the customer has been deleted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CustomerChangeItem(long sequence,
+                                 String peselNumber,
+                                 CustomerChange.Type type,
+                                 Instant changedAt,
+                                 CustomerDetails customer) {
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import pl.szczesnaj.customersapp.model.CustomerChange;
+import pl.szczesnaj.customersapp.repository.CustomerChangeLogRepository;
+
+import java.time.Instant;
+
+/**
+ * Writes every {@link CustomersChangedEvent} to the change log. A plain event listener runs
+ * when the event is published, inside the transaction of the write, so an entry is committed
+ * or rolled back together with its change.
+ * <p>
+ * Pending entity changes are flushed first, so the entry is the last statement before the commit
+ * and waiting for row locks happens before its sequence number is taken; the change feed relies
+ * on that.
+ */
+@Component
+@RequiredArgsConstructor
+class CustomerChangeJournal {
+    private final CustomerChangeLogRepository changeLogRepository;
+    private final EntityManager entityManager;
+
+    @EventListener
+    void record(CustomersChangedEvent event) {
+        entityManager.flush();
+        changeLogRepository.append(CustomerChange.Type.valueOf(event.change().name()), event.customers(),
+                Instant.now());
+    }
+}
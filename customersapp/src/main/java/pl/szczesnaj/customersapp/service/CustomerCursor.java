@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import pl.szczesnaj.customersapp.model.CustomerView;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque position in the customers list used by keyset pagination.
+ * Clients receive it as {@code nextCursor} and pass it back unchanged.
+ */
+public final class CustomerCursor {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private CustomerCursor() {
+    }
+
+    public static String encode(long lastId) {
+        return ENCODER.encodeToString(Long.toString(lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static long decode(String cursor) {
+        try {
+            return Long.parseLong(new String(DECODER.decode(cursor), StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * @return cursor of the position after the given customer in a list sorted by {@code orderBy}
+     */
+    public static String encode(CustomerView last, CustomerOrder orderBy) {
+        return encode(new Position(last.id(), orderBy.cursorValue(last)));
+    }
+
+    /**
+     * Position in a list sorted by a value, then by id. Without a value it is the same
+     * as the cursor of {@link #encode(long)}.
+     */
+    record Position(long id, String value) {
+    }
+
+    static String encode(Position last) {
+        String position = last.value() != null ? last.id() + ":" + last.value() : Long.toString(last.id());
+        return ENCODER.encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Position decodePosition(String cursor) {
+        try {
+            String decoded = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            return separator < 0
+                    ? new Position(Long.parseLong(decoded), null)
+                    : new Position(Long.parseLong(decoded.substring(0, separator)), decoded.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
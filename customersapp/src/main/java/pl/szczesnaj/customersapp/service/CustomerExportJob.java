@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import pl.szczesnaj.customersapp.export.ExportFormat;
+
+import java.time.Instant;
+
+/**
+ * State of a background export started with {@link CustomerExportJobs#start(ExportFormat, boolean)}.
+ * {@code totalRows} is known once the job has counted the customers, {@code size} once it is completed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CustomerExportJob(String id, Status status, ExportFormat format, boolean gzip, long exportedRows, Long totalRows,
+                                Long size, Instant createdAt, Instant completedAt, String error) {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
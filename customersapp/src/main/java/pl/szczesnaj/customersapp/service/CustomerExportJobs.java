@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+import pl.szczesnaj.customersapp.export.CustomerWriter;
+import pl.szczesnaj.customersapp.export.ExportFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs exports in the background on the application task executor, each into its own
+ * temporary file, so no request thread is held while the table is read. Finished files can
+ * be downloaded many times until they expire after {@code customers.export.jobs.retention}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CustomerExportJobs {
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final CustomerService customerService;
+    private final CustomerMetrics customerMetrics;
+    private final AsyncTaskExecutor taskExecutor;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Value("${customers.export.jobs.directory:${java.io.tmpdir}}")
+    private Path directory;
+
+    @Value("${customers.export.jobs.max-running:2}")
+    private int maxRunning;
+
+    @Value("${customers.export.jobs.retention:1h}")
+    private Duration retention;
+
+    /**
+     * Starts exporting all customers to a new file in the given format, gzip-compressed if requested.
+     *
+     * @return the started job, or empty when {@code customers.export.jobs.max-running} jobs are already running
+     */
+    public synchronized Optional<CustomerExportJob> start(ExportFormat format, boolean gzip) throws IOException {
+        removeExpired();
+        long running = jobs.values().stream().filter(job -> job.status == CustomerExportJob.Status.RUNNING).count();
+        if (running >= maxRunning) {
+            return Optional.empty();
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), format, gzip, Files.createTempFile(
+                directory, "customers-export-", format.getExtension() + (gzip ? ".gz" : "")));
+        jobs.put(job.id, job);
+        taskExecutor.execute(() -> run(job));
+        return Optional.of(job.toExportJob());
+    }
+
+    public Optional<CustomerExportJob> get(String id) {
+        removeExpired();
+        return Optional.ofNullable(jobs.get(id)).map(Job::toExportJob);
+    }
+
+    /**
+     * @return file of the given job, or empty when the job is unknown or not completed
+     */
+    public Optional<Path> getFile(String id) {
+        return Optional.ofNullable(jobs.get(id))
+                .filter(job -> job.status == CustomerExportJob.Status.COMPLETED)
+                .map(job -> job.file);
+    }
+
+    /**
+     * Removes a finished job together with its file.
+     *
+     * @return false when the job is unknown or still running
+     */
+    public boolean remove(String id) {
+        Job job = jobs.get(id);
+        if (job == null || job.status == CustomerExportJob.Status.RUNNING || !jobs.remove(id, job)) {
+            return false;
+        }
+        delete(job.file);
+        return true;
+    }
+
+    private void run(Job job) {
+        try {
+            job.totalRows = customerService.countCustomers();
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(job.file), BUFFER_SIZE);
+            if (job.gzip) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            try (CustomerWriter writer = job.format.open(out, objectMapper)) {
+                writer.writeHeader();
+                customerService.exportCustomers(customer -> {
+                    writer.write(customer);
+                    job.exportedRows++;
+                });
+            }
+            job.size = Files.size(job.file);
+            customerMetrics.exported(job.exportedRows, job.size);
+            job.finish(CustomerExportJob.Status.COMPLETED, null);
+        } catch (Exception e) {
+            log.error("Export {} failed", job.id, e);
+            delete(job.file);
+            job.finish(CustomerExportJob.Status.FAILED, e.getMessage());
+        }
+    }
+
+    private void removeExpired() {
+        Instant expired = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.completedAt != null && job.completedAt.isBefore(expired)) {
+                delete(job.file);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    void removeAll() {
+        jobs.values().forEach(job -> delete(job.file));
+        jobs.clear();
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Cannot delete export file {}", file, e);
+        }
+    }
+
+    /**
+     * Mutable state of a job. Fields are written by the exporting thread only and read by request threads.
+     */
+    private static class Job {
+        private final String id;
+        private final ExportFormat format;
+        private final boolean gzip;
+        private final Path file;
+        private final Instant createdAt = Instant.now();
+        private volatile CustomerExportJob.Status status = CustomerExportJob.Status.RUNNING;
+        private volatile long exportedRows;
+        private volatile Long totalRows;
+        private volatile Long size;
+        private volatile Instant completedAt;
+        private volatile String error;
+
+        Job(String id, ExportFormat format, boolean gzip, Path file) {
+            this.id = id;
+            this.format = format;
+            this.gzip = gzip;
+            this.file = file;
+        }
+
+        void finish(CustomerExportJob.Status status, String error) {
+            this.error = error;
+            this.completedAt = Instant.now();
+            this.status = status;
+        }
+
+        CustomerExportJob toExportJob() {
+            return new CustomerExportJob(id, status, format, gzip, exportedRows, totalRows, size,
+                    createdAt, completedAt, error);
+        }
+    }
+}
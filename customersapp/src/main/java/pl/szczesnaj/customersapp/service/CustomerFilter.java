@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+/**
+ * Filters of customer lists. A null value does not filter, true keeps customers having the contact
+ * and false the ones without it.
+ */
+public record CustomerFilter(Boolean hasEmail, Boolean hasBusinessPhone) {
+    public static final CustomerFilter NONE = new CustomerFilter(null, null);
+}
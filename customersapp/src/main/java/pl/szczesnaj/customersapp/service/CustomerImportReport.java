@@ -0,0 +1,11 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import java.util.List;
+
+public record CustomerImportReport(long created, long rejected, List<CustomerImportResult> items) {
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CustomerImportResult(long item, String peselNumber, Status status, String message) {
+
+    public enum Status {
+        CREATED,
+        CONFLICT,
+        INVALID
+    }
+}
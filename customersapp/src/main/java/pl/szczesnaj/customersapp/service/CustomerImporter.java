@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.supercsv.exception.SuperCsvException;
+import pl.szczesnaj.customersapp.export.CustomerCsvReader;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads customers from a stream (JSON or CSV), validates them and stores them in chunks
+ * through {@link CustomerService#addCustomers(List)}. Each chunk is committed
+ * separately, so a rejected customer never aborts the whole import.
+ */
+@Service
+@RequiredArgsConstructor
+@Timed(value = CustomerMetrics.SERVICE_TIMER, histogram = true)
+public class CustomerImporter {
+    private final CustomerService customerService;
+    private final CustomerMetrics customerMetrics;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Value("${customers.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${customers.import.max-reported-rejections:1000}")
+    private int maxReportedRejections;
+
+    /**
+     * Imports a JSON array or newline delimited JSON objects. Processing stops at
+     * malformed input; customers read before it are kept.
+     */
+    public CustomerImportReport importJson(InputStream json) throws IOException {
+        ImportSession session = new ImportSession(true, Integer.MAX_VALUE);
+        long item = 0;
+        try (MappingIterator<Customer> customers = objectMapper.readerFor(Customer.class).readValues(json)) {
+            while (true) {
+                try {
+                    if (!customers.hasNextValue()) {
+                        break;
+                    }
+                    session.add(item, customers.nextValue());
+                } catch (JsonParseException e) {
+                    session.reject(item, null, "Malformed JSON: " + e.getOriginalMessage());
+                    break;
+                } catch (JsonMappingException e) {
+                    session.reject(item, null, e.getOriginalMessage());
+                }
+                item++;
+            }
+        }
+        return session.finish();
+    }
+
+    /**
+     * Imports CSV in the export layout. Only rejected rows are reported, identified by
+     * their line number, and at most {@code customers.import.max-reported-rejections} of them.
+     *
+     * @throws IllegalArgumentException when the CSV header does not match the export header
+     */
+    public CustomerImportReport importCsv(Reader csv) throws IOException {
+        ImportSession session = new ImportSession(false, maxReportedRejections);
+        try (CustomerCsvReader reader = new CustomerCsvReader(csv)) {
+            reader.readHeader();
+            while (true) {
+                Customer customer;
+                try {
+                    customer = reader.read();
+                } catch (SuperCsvException e) {
+                    session.reject(reader.getLineNumber(), null, e.getMessage());
+                    continue;
+                }
+                if (customer == null) {
+                    break;
+                }
+                session.add(reader.getLineNumber(), customer);
+            }
+        }
+        return session.finish();
+    }
+
+    private String validate(Customer customer) {
+        Stream<ConstraintViolation<Object>> violations = validator.validate((Object) customer).stream();
+        if (customer.getContacts() != null) {
+            violations = Stream.concat(violations, validator.validate((Object) customer.getContacts()).stream());
+        }
+        return violations
+                .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private class ImportSession {
+        private final boolean reportCreated;
+        private final int maxReportedRejections;
+        private final List<CustomerImportResult> results = new ArrayList<>();
+        private final List<Customer> chunk = new ArrayList<>();
+        private final List<Long> chunkItems = new ArrayList<>();
+        private long created;
+        private long rejected;
+
+        ImportSession(boolean reportCreated, int maxReportedRejections) {
+            this.reportCreated = reportCreated;
+            this.maxReportedRejections = maxReportedRejections;
+        }
+
+        void add(long item, Customer customer) {
+            String violations = validate(customer);
+            if (!violations.isEmpty()) {
+                reject(item, customer.getPeselNumber(), violations);
+                return;
+            }
+            chunk.add(customer);
+            chunkItems.add(item);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        void reject(long item, String peselNumber, String message) {
+            reject(new CustomerImportResult(item, peselNumber, CustomerImportResult.Status.INVALID, message));
+        }
+
+        private void reject(CustomerImportResult result) {
+            customerMetrics.imported(result.status());
+            if (rejected++ < maxReportedRejections) {
+                results.add(result);
+            }
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<Customer> added;
+            String conflict = "Customer with this PESEL number already exists";
+            try {
+                added = customerService.addCustomers(chunk);
+            } catch (DataIntegrityViolationException e) {
+                // a concurrent writer inserted one of the PESEL numbers after the duplicate check
+                try {
+                    added = customerService.addCustomers(chunk);
+                } catch (DataIntegrityViolationException again) {
+                    // chunks committed before stay, so the chunk is reported instead of failing the import
+                    added = List.of();
+                    conflict = "Not added, customers with PESEL numbers of this chunk were inserted concurrently";
+                }
+            }
+            Set<Customer> addedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            addedSet.addAll(added);
+
+            for (int i = 0; i < chunk.size(); i++) {
+                Customer customer = chunk.get(i);
+                if (addedSet.contains(customer)) {
+                    created++;
+                    customerMetrics.imported(CustomerImportResult.Status.CREATED);
+                    if (reportCreated) {
+                        results.add(new CustomerImportResult(chunkItems.get(i), customer.getPeselNumber(),
+                                CustomerImportResult.Status.CREATED, null));
+                    }
+                } else {
+                    reject(new CustomerImportResult(chunkItems.get(i), customer.getPeselNumber(),
+                            CustomerImportResult.Status.CONFLICT, conflict));
+                }
+            }
+            chunk.clear();
+            chunkItems.clear();
+        }
+
+        CustomerImportReport finish() {
+            flush();
+            results.sort(Comparator.comparingLong(CustomerImportResult::item));
+            return new CustomerImportReport(created, rejected, results);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Counters of customers going in and out in bulk, next to the {@code customers.service} timers.
+ */
+@Component
+public class CustomerMetrics {
+    static final String SERVICE_TIMER = "customers.service";
+
+    private final Counter exportedRows;
+    private final Counter exportedBytes;
+    private final Map<CustomerImportResult.Status, Counter> importedItems =
+            new EnumMap<>(CustomerImportResult.Status.class);
+
+    CustomerMetrics(MeterRegistry meterRegistry) {
+        this.exportedRows = Counter.builder("customers.export.rows")
+                .description("Customers written by exports")
+                .register(meterRegistry);
+        this.exportedBytes = Counter.builder("customers.export.bytes")
+                .description("Bytes of export responses and files, after compression")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        for (CustomerImportResult.Status status : CustomerImportResult.Status.values()) {
+            importedItems.put(status, Counter.builder("customers.import.items")
+                    .description("Customers read by bulk import, by result")
+                    .tag("status", status.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    public void exported(long rows, long bytes) {
+        exportedRows.increment(rows);
+        exportedBytes.increment(bytes);
+    }
+
+    void imported(CustomerImportResult.Status status) {
+        importedItems.get(status).increment();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import org.springframework.data.domain.Sort;
+import pl.szczesnaj.customersapp.model.CustomerView;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Columns customers can be listed by. Each is backed by an index on the column and the id,
+ * which breaks ties, so both offset and keyset pages read the index in order.
+ */
+public enum CustomerOrder {
+    ID("id"),
+    NAME("name"),
+    SURNAME("surname"),
+    BIRTH_DATE("birthDate");
+
+    private final String property;
+
+    CustomerOrder(String property) {
+        this.property = property;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    Sort sort(Sort.Direction direction) {
+        return this == ID
+                ? Sort.by(direction, ID.property)
+                : Sort.by(direction, property, ID.property);
+    }
+
+    /**
+     * @return the value a keyset cursor keeps for the customer, null for {@link #ID}
+     */
+    String cursorValue(CustomerView customer) {
+        return switch (this) {
+            case ID -> null;
+            case NAME -> customer.name();
+            case SURNAME -> customer.surname();
+            case BIRTH_DATE -> customer.birthDate() != null ? customer.birthDate().toString() : null;
+        };
+    }
+
+    Comparable<?> parseCursorValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        return this == BIRTH_DATE ? LocalDate.parse(value) : value;
+    }
+
+    /**
+     * Accepts the property name, as in {@code birthDate}, or the constant name.
+     *
+     * @throws IllegalArgumentException for other columns
+     */
+    public static CustomerOrder fromName(String name) {
+        for (CustomerOrder order : values()) {
+            if (order.property.equalsIgnoreCase(name)) {
+                return order;
+            }
+        }
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import java.util.List;
+
+/**
+ * Numbered page of customers, {@code number} counted from 0.
+ */
+public record CustomerPage<T>(List<T> content,
+                              int number,
+                              int size,
+                              long totalElements,
+                              int totalPages) {
+
+    public boolean hasNext() {
+        return number + 1 < totalPages;
+    }
+}
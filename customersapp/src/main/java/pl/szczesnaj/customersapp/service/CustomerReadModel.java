@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerChange;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+import pl.szczesnaj.customersapp.repository.CustomerChangeLogRepository;
+import pl.szczesnaj.customersapp.repository.CustomerRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot mode of {@link CustomerService#getCustomerByPeselNum}, switched on with
+ * {@code customers.snapshot.enabled}: all customers are held in an off-heap {@link CustomerSnapshot},
+ * so lookups by PESEL number never reach the database.
+ * <p>
+ * The snapshot is built with a streaming scan once the application is ready. Committed changes
+ * are kept on the heap in front of it and, once there are {@code customers.snapshot.max-changes}
+ * of them, merged into a new snapshot in the background. Changes made while the scan runs take
+ * precedence over the scanned rows, as the scan may have read an older state.
+ * <p>
+ * With {@code customers.snapshot.file} set, every new snapshot is also saved to that file with
+ * the last sequence number of the change log. On start the saved snapshot is mapped instead of
+ * scanning the table, and only customers in the change log after that sequence number are read.
+ * Changes with lower sequence numbers committed after the save are caught by also reading those
+ * made within {@code customers.snapshot.replay-overlap} before it. The snapshot is used when it
+ * then holds as many customers as the table; otherwise the table is scanned.
+ */
+@Slf4j
+@Component
+class CustomerReadModel {
+    private static final Optional<CustomerDetails> DELETED = Optional.empty();
+    private static final int REPLAY_CHUNK_SIZE = 1000;
+
+    private final CustomerRepository customerRepository;
+    private final CustomerChangeLogRepository changeLogRepository;
+    private final AsyncTaskExecutor taskExecutor;
+    private final boolean enabled;
+    private final int maxChanges;
+    private final Path file;
+    private final Duration replayOverlap;
+
+    private final Map<Long, Optional<CustomerDetails>> changes = new ConcurrentHashMap<>();
+    private final AtomicBoolean merging = new AtomicBoolean();
+    private volatile CustomerSnapshot snapshot;
+
+    CustomerReadModel(CustomerRepository customerRepository,
+                      CustomerChangeLogRepository changeLogRepository,
+                      AsyncTaskExecutor taskExecutor,
+                      MeterRegistry meterRegistry,
+                      @Value("${customers.snapshot.enabled:false}") boolean enabled,
+                      @Value("${customers.snapshot.max-changes:1000}") int maxChanges,
+                      @Value("${customers.snapshot.file:}") String file,
+                      @Value("${customers.snapshot.replay-overlap:1m}") Duration replayOverlap) {
+        this.customerRepository = customerRepository;
+        this.changeLogRepository = changeLogRepository;
+        this.taskExecutor = taskExecutor;
+        this.enabled = enabled;
+        this.maxChanges = maxChanges;
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.replayOverlap = replayOverlap;
+        if (enabled) {
+            Gauge.builder("customers.snapshot.customers", this, model -> model.current().size())
+                    .description("Customers in the snapshot, without changes not merged yet")
+                    .register(meterRegistry);
+            Gauge.builder("customers.snapshot.memory", this, model -> model.current().memoryUsed())
+                    .description("Off-heap memory of the snapshot")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("customers.snapshot.changes", changes, Map::size)
+                    .description("Changes waiting to be merged into the snapshot")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return true when lookups can be served by {@link #find}
+     */
+    boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * @param peselNumber valid PESEL number
+     */
+    Optional<CustomerDetails> find(String peselNumber) {
+        // changes first: a merge publishes the new snapshot before it drops the merged changes;
+        // looked up only when there are any, so lookups between merges do not box the key
+        if (!changes.isEmpty()) {
+            Optional<CustomerDetails> change = changes.get(PeselNumber.pack(peselNumber));
+            if (change != null) {
+                return change;
+            }
+        }
+        return snapshot.find(peselNumber);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    void build() {
+        if (!enabled) {
+            return;
+        }
+        if (file != null && Files.exists(file) && load()) {
+            mergeIfNeeded();
+            return;
+        }
+        long start = System.nanoTime();
+        long sequence = changeLogRepository.findLastSequence();
+        Instant scannedAt = Instant.now();
+        CustomerSnapshot.Builder builder = new CustomerSnapshot.Builder();
+        long scanned = customerRepository.forEachCustomer(customer ->
+                builder.add(PeselNumber.pack(customer.getPeselNumber()), CustomerDetails.of(customer)));
+        snapshot = builder.build();
+        log.info("Customer snapshot built from {} customers in {} ms, {} kB off heap",
+                scanned, (System.nanoTime() - start) / 1_000_000, snapshot.memoryUsed() / 1024);
+        save(new CustomerSnapshotFile(snapshot, sequence, scannedAt));
+        mergeIfNeeded();
+    }
+
+    /**
+     * Maps the saved snapshot and reads customers changed since it was saved.
+     *
+     * @return false when the saved snapshot cannot be used
+     */
+    private boolean load() {
+        long start = System.nanoTime();
+        CustomerSnapshotFile saved;
+        try {
+            saved = CustomerSnapshotFile.read(file);
+        } catch (IOException e) {
+            log.warn("Customer snapshot file not used: {}", e.getMessage());
+            return false;
+        }
+        if (saved.sequence() > changeLogRepository.findLastSequence()) {
+            log.warn("Customer snapshot file {} is ahead of the change log, it was saved for another database", file);
+            return false;
+        }
+
+        Map<Long, Optional<CustomerDetails>> replayed = replay(saved);
+        long size = saved.snapshot().size();
+        for (Map.Entry<Long, Optional<CustomerDetails>> change : replayed.entrySet()) {
+            boolean inSnapshot = saved.snapshot().contains(change.getKey());
+            if (change.getValue().isPresent() && !inSnapshot) {
+                size++;
+            } else if (change.getValue().isEmpty() && inSnapshot) {
+                size--;
+            }
+        }
+        long count = customerRepository.count();
+        if (size != count) {
+            log.warn("Customer snapshot file {} holds {} customers with changes replayed, the table {}", file, size, count);
+            return false;
+        }
+
+        // changes committed meanwhile were read after the replayed ones and are not older
+        replayed.forEach(changes::putIfAbsent);
+        snapshot = saved.snapshot();
+        log.info("Customer snapshot of {} customers mapped from {} with {} changes replayed in {} ms",
+                size, file, replayed.size(), (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * @return current state of customers in the change log since the snapshot was saved,
+     * keyed by packed PESEL number
+     */
+    private Map<Long, Optional<CustomerDetails>> replay(CustomerSnapshotFile saved) {
+        Map<Long, String> changedIds = new HashMap<>();
+        try (Stream<CustomerChange> changeLog = changeLogRepository.streamChanges(
+                saved.sequence(), saved.savedAt().minus(replayOverlap))) {
+            changeLog.forEach(change -> changedIds.put(change.customerId(), change.peselNumber()));
+        }
+
+        Map<Long, Optional<CustomerDetails>> replayed = new HashMap<>();
+        changedIds.values().forEach(pesel -> replayed.put(PeselNumber.pack(pesel), DELETED));
+        List<Long> ids = new ArrayList<>(changedIds.keySet());
+        for (int from = 0; from < ids.size(); from += REPLAY_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + REPLAY_CHUNK_SIZE, ids.size()));
+            for (CustomerDetails customer : customerRepository.findCustomerDetailsByIds(chunk)) {
+                replayed.put(PeselNumber.pack(customer.peselNumber()), Optional.of(customer));
+            }
+        }
+        return replayed;
+    }
+
+    private void save(CustomerSnapshotFile snapshotFile) {
+        if (file == null) {
+            return;
+        }
+        try {
+            snapshotFile.write(file);
+        } catch (IOException e) {
+            log.warn("Customer snapshot not saved to {}", file, e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void update(CustomersChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (Customer customer : event.customers()) {
+            changes.put(PeselNumber.pack(customer.getPeselNumber()),
+                    event.change() == CustomersChangedEvent.Change.DELETED
+                            ? DELETED : Optional.of(CustomerDetails.of(customer)));
+        }
+        mergeIfNeeded();
+    }
+
+    private void mergeIfNeeded() {
+        if (snapshot != null && changes.size() >= maxChanges && merging.compareAndSet(false, true)) {
+            taskExecutor.execute(this::merge);
+        }
+    }
+
+    private void merge() {
+        try {
+            long start = System.nanoTime();
+            long sequence = file != null ? changeLogRepository.findLastSequence() : 0;
+            Instant mergedAt = Instant.now();
+            Map<Long, Optional<CustomerDetails>> merged = Map.copyOf(changes);
+            CustomerSnapshot.Builder builder = new CustomerSnapshot.Builder();
+            snapshot.forEach((pesel, customer) -> {
+                if (!merged.containsKey(pesel)) {
+                    builder.add(pesel, customer);
+                }
+            });
+            merged.forEach((pesel, change) -> change.ifPresent(customer -> builder.add(pesel, customer)));
+            snapshot = builder.build();
+            save(new CustomerSnapshotFile(snapshot, sequence, mergedAt));
+            // changes made during the merge are newer than the merged ones and stay
+            merged.forEach(changes::remove);
+            log.debug("Merged {} changes into the customer snapshot in {} ms",
+                    merged.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Merging changes into the customer snapshot failed", e);
+        } finally {
+            merging.set(false);
+        }
+        mergeIfNeeded();
+    }
+
+    private CustomerSnapshot current() {
+        CustomerSnapshot current = snapshot;
+        return current != null ? current : CustomerSnapshot.EMPTY;
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+/**
+ * Criteria of {@link CustomerService#searchCustomers}. Name and surname match by prefix, ignoring
+ * case and diacritics, e-mail address ignoring case, and phone number is either the private or the
+ * business one. Null criteria are not checked, the others all have to match.
+ */
+public record CustomerSearch(String name, String surname, String email, String phone) {
+
+    public boolean isEmpty() {
+        return name == null && surname == null && email == null && phone == null;
+    }
+}
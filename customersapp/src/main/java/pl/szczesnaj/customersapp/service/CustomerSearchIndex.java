@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.szczesnaj.customersapp.model.CommunicationMethods;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.repository.CustomerRepository;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index behind {@link CustomerService#searchCustomers}. Names and surnames are kept
+ * in sorted sets for prefix search, e-mail addresses and phone numbers in hash maps for exact
+ * lookups. Only ids and the indexed values are held, customers themselves are read by id.
+ * <p>
+ * The index is built with a streaming scan once the application is ready and then follows
+ * committed changes. Customers changed while the scan runs keep the state from the change,
+ * as the scan may have read an older one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+class CustomerSearchIndex {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}");
+
+    private final CustomerRepository customerRepository;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<Key> names = new ConcurrentSkipListSet<>();
+    private final NavigableSet<Key> surnames = new ConcurrentSkipListSet<>();
+    private final Map<String, NavigableSet<Long>> emails = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> phones = new ConcurrentHashMap<>();
+    private final Set<Long> changedWhileBuilding = ConcurrentHashMap.newKeySet();
+    private volatile boolean building = true;
+
+    /**
+     * Position of a customer in one of the indexes; {@code value} is the normalized indexed value.
+     */
+    record Key(String value, long id) implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key other) {
+            int byValue = value.compareTo(other.value);
+            return byValue != 0 ? byValue : Long.compare(id, other.id);
+        }
+    }
+
+    private record Entry(String name, String surname, String email, String privatePhone, String businessPhone) {
+
+        boolean matches(CustomerSearch search) {
+            return (search.name() == null || name.startsWith(search.name()))
+                    && (search.surname() == null || surname.startsWith(search.surname()))
+                    && (search.email() == null || search.email().equals(email))
+                    && (search.phone() == null
+                    || search.phone().equals(privatePhone) || search.phone().equals(businessPhone));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    void build() {
+        long start = System.nanoTime();
+        long scanned = customerRepository.forEachCustomer(customer -> {
+            synchronized (this) {
+                if (!changedWhileBuilding.contains(customer.getId())) {
+                    put(customer);
+                }
+            }
+        });
+        synchronized (this) {
+            building = false;
+            changedWhileBuilding.clear();
+        }
+        log.info("Search index built from {} customers in {} ms", scanned, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    synchronized void update(CustomersChangedEvent event) {
+        for (Customer customer : event.customers()) {
+            if (building) {
+                changedWhileBuilding.add(customer.getId());
+            }
+            if (event.change() == CustomersChangedEvent.Change.DELETED) {
+                remove(customer.getId());
+            } else {
+                put(customer);
+            }
+        }
+    }
+
+    /**
+     * @param after position following the previous page, or null for the first page
+     * @return keys of up to {@code limit + 1} matching customers, ordered by the index searched:
+     * surname, name, e-mail or phone in this order of preference
+     * @throws IllegalStateException while the index is being built
+     */
+    List<Key> search(CustomerSearch search, Key after, int limit) {
+        if (building) {
+            throw new IllegalStateException("Search index is being built");
+        }
+        CustomerSearch normalized = new CustomerSearch(
+                search.name() != null ? normalize(search.name()) : null,
+                search.surname() != null ? normalize(search.surname()) : null,
+                search.email() != null ? search.email().strip().toLowerCase(Locale.ROOT) : null,
+                search.phone() != null ? search.phone().strip() : null);
+
+        Iterator<Key> candidates;
+        if (normalized.surname() != null) {
+            candidates = byPrefix(surnames, normalized.surname(), after);
+        } else if (normalized.name() != null) {
+            candidates = byPrefix(names, normalized.name(), after);
+        } else if (normalized.email() != null) {
+            candidates = byValue(emails, normalized.email(), after);
+        } else {
+            candidates = byValue(phones, normalized.phone(), after);
+        }
+
+        List<Key> found = new ArrayList<>(limit + 1);
+        while (candidates.hasNext() && found.size() <= limit) {
+            Key key = candidates.next();
+            Entry entry = entries.get(key.id());
+            if (entry != null && entry.matches(normalized)) {
+                found.add(key);
+            }
+        }
+        return found;
+    }
+
+    private static Iterator<Key> byPrefix(NavigableSet<Key> index, String prefix, Key after) {
+        NavigableSet<Key> tail = after != null
+                ? index.tailSet(after, false)
+                : index.tailSet(new Key(prefix, Long.MIN_VALUE), true);
+        return tail.stream()
+                .takeWhile(key -> key.value().startsWith(prefix))
+                .iterator();
+    }
+
+    private static Iterator<Key> byValue(Map<String, NavigableSet<Long>> index, String value, Key after) {
+        NavigableSet<Long> ids = index.getOrDefault(value, Collections.emptyNavigableSet());
+        if (after != null) {
+            ids = ids.tailSet(after.id(), false);
+        }
+        return ids.stream()
+                .map(id -> new Key(value, id))
+                .iterator();
+    }
+
+    private void put(Customer customer) {
+        remove(customer.getId());
+        CommunicationMethods contacts = customer.getContacts();
+        Entry entry = new Entry(normalize(customer.getName()), normalize(customer.getSurname()),
+                contacts != null && contacts.getEmailAddress() != null
+                        ? contacts.getEmailAddress().toLowerCase(Locale.ROOT)
+                        : null,
+                contacts != null ? contacts.getPrivatePhoneNumber() : null,
+                contacts != null ? contacts.getBusinessPhoneNumber() : null);
+
+        entries.put(customer.getId(), entry);
+        names.add(new Key(entry.name(), customer.getId()));
+        surnames.add(new Key(entry.surname(), customer.getId()));
+        addValue(emails, entry.email(), customer.getId());
+        addValue(phones, entry.privatePhone(), customer.getId());
+        addValue(phones, entry.businessPhone(), customer.getId());
+    }
+
+    private void remove(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        names.remove(new Key(entry.name(), id));
+        surnames.remove(new Key(entry.surname(), id));
+        removeValue(emails, entry.email(), id);
+        removeValue(phones, entry.privatePhone(), id);
+        removeValue(phones, entry.businessPhone(), id);
+    }
+
+    private static void addValue(Map<String, NavigableSet<Long>> index, String value, long id) {
+        if (value != null) {
+            index.computeIfAbsent(value, v -> new ConcurrentSkipListSet<>()).add(id);
+        }
+    }
+
+    private static void removeValue(Map<String, NavigableSet<Long>> index, String value, long id) {
+        if (value != null) {
+            index.computeIfPresent(value, (v, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Lower case without diacritics, so "Łukasz Żak" is found by "lukasz zak".
+     */
+    static String normalize(String value) {
+        String decomposed = Normalizer.normalize(value.strip().toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").replace('ł', 'l');
+    }
+}
@@ -5,59 +5,264 @@
 
 package pl.szczesnaj.customersapp.service;
 
+import io.micrometer.core.annotation.Timed;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import pl.szczesnaj.customersapp.model.CommunicationMethods;
 import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.CustomerSummary;
+import pl.szczesnaj.customersapp.model.CustomerView;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+import pl.szczesnaj.customersapp.repository.CustomerBatchRepository;
+import pl.szczesnaj.customersapp.repository.CustomerChangeLogRepository;
 import pl.szczesnaj.customersapp.repository.CustomerRepository;
 
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
+@Timed(value = CustomerMetrics.SERVICE_TIMER, histogram = true)
 public class CustomerService {
 
     public static final int PAGE_SIZE = 5;
+    public static final int MAX_SLICE_SIZE = 100;
     private final CustomerRepository customerRepository;
+    private final CustomerBatchRepository customerBatchRepository;
+    private final CustomerChangeLogRepository changeLogRepository;
+    private final CustomerCache customerCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CustomerSearchIndex customerSearchIndex;
+    private final CustomerReadModel customerReadModel;
 
-    public Page<Customer> getCustomers(int page, Sort.Direction sort) {
+    @Value("${customers.query-cache.pages:3}")
+    private int cachedPages;
+
+    @Transactional(readOnly = true)
+    public CustomerPage<CustomerSummary> getCustomers(int page, Sort.Direction sort) {
+        return getCustomers(page, CustomerOrder.ID, sort, CustomerFilter.NONE, CustomerSummary.class);
+    }
+
+    /**
+     * Page of customers sorted by the given column, then by id, read into the given projection.
+     * The count query is skipped when the page is not full, as then it is the last one.
+     * The first {@code customers.query-cache.pages} pages and the count come from the query cache.
+     */
+    @Transactional(readOnly = true)
+    public <T extends CustomerView> CustomerPage<T> getCustomers(int page, CustomerOrder orderBy, Sort.Direction sort,
+                                                                 CustomerFilter filter, Class<T> projection) {
         int pageNumber = Math.max(page, 0);
         Sort.Direction sortDirection = sort != null ? sort : Sort.Direction.ASC;
-        return customerRepository.findAllCustomers(
-                PageRequest.of(pageNumber, PAGE_SIZE,
-                        Sort.by(sortDirection, "id")));
+        long offset = (long) pageNumber * PAGE_SIZE;
+        Specification<Customer> specification = CustomerSpecifications.matching(filter);
+        boolean cacheable = pageNumber < cachedPages;
+        List<T> content = customerRepository.findProjected(projection, specification,
+                orderBy.sort(sortDirection), offset, PAGE_SIZE, cacheable);
+        long totalElements = content.size() < PAGE_SIZE && (offset == 0 || !content.isEmpty())
+                ? offset + content.size()
+                : customerRepository.countMatching(specification, cacheable);
+        int totalPages = (int) ((totalElements + PAGE_SIZE - 1) / PAGE_SIZE);
+        return new CustomerPage<>(content, pageNumber, PAGE_SIZE, totalElements, totalPages);
+    }
+
+    @Transactional(readOnly = true)
+    public CustomerSlice<CustomerSummary> getCustomers(String cursor, int limit, Sort.Direction sort, boolean withTotal) {
+        return getCustomers(cursor, limit, CustomerOrder.ID, sort, CustomerFilter.NONE, withTotal, CustomerSummary.class);
+    }
+
+    /**
+     * Keyset variant of {@link #getCustomers(int, CustomerOrder, Sort.Direction, CustomerFilter, Class)}. Reads
+     * the customers following the given cursor using an index seek on the sort column and id instead
+     * of OFFSET, so deep positions cost the same as the first one. The total count is computed only on request.
+     * The first slice and the count come from the query cache.
+     *
+     * @throws IllegalArgumentException when the cursor is invalid
+     */
+    @Transactional(readOnly = true)
+    public <T extends CustomerView> CustomerSlice<T> getCustomers(String cursor, int limit, CustomerOrder orderBy,
+                                                                  Sort.Direction sort, CustomerFilter filter,
+                                                                  boolean withTotal, Class<T> projection) {
+        int size = Math.min(Math.max(limit, 1), MAX_SLICE_SIZE);
+        Sort.Direction sortDirection = sort != null ? sort : Sort.Direction.ASC;
+        Specification<Customer> specification = CustomerSpecifications.matching(filter);
+        if (cursor != null) {
+            CustomerCursor.Position after = CustomerCursor.decodePosition(cursor);
+            try {
+                orderBy.parseCursorValue(after.value());
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+            specification = specification.and(CustomerSpecifications.after(orderBy, sortDirection, after));
+        }
+
+        List<T> content = customerRepository.findProjected(projection, specification,
+                orderBy.sort(sortDirection), 0, size + 1, cursor == null);
+        boolean hasNext = content.size() > size;
+        if (hasNext) {
+            content = content.subList(0, size);
+        }
+        T last = hasNext ? content.get(content.size() - 1) : null;
+        String nextCursor = last != null ? CustomerCursor.encode(last, orderBy) : null;
+        Long totalElements = withTotal
+                ? customerRepository.countMatching(CustomerSpecifications.matching(filter), true)
+                : null;
+        return new CustomerSlice<>(content, content.size(), hasNext, nextCursor, totalElements);
+    }
+
+    /**
+     * Finds customers in the in-memory search index and reads the matching page by id.
+     * Pages follow each other with cursors like {@link #getCustomers(String, int, Sort.Direction, boolean)}.
+     *
+     * @throws IllegalArgumentException when no criteria are given or the cursor is invalid
+     * @throws IllegalStateException    while the search index is being built
+     */
+    @Transactional(readOnly = true)
+    public CustomerSlice<CustomerDetails> searchCustomers(CustomerSearch search, String cursor, int limit) {
+        if (search.isEmpty()) {
+            throw new IllegalArgumentException("No search criteria");
+        }
+        int size = Math.min(Math.max(limit, 1), MAX_SLICE_SIZE);
+        CustomerSearchIndex.Key after = null;
+        if (cursor != null) {
+            CustomerCursor.Position position = CustomerCursor.decodePosition(cursor);
+            after = new CustomerSearchIndex.Key(position.value() != null ? position.value() : "", position.id());
+        }
+        List<CustomerSearchIndex.Key> keys = customerSearchIndex.search(search, after, size);
+        boolean hasNext = keys.size() > size;
+        if (hasNext) {
+            keys = keys.subList(0, size);
+        }
+        if (keys.isEmpty()) {
+            return new CustomerSlice<>(List.of(), 0, false, null, null);
+        }
+
+        Map<Long, CustomerDetails> customers = customerRepository.findCustomerDetailsByIds(
+                        keys.stream().map(CustomerSearchIndex.Key::id).toList()).stream()
+                .collect(Collectors.toMap(CustomerDetails::id, Function.identity()));
+        List<CustomerDetails> content = keys.stream()
+                .map(key -> customers.get(key.id()))
+                .filter(Objects::nonNull)
+                .toList();
+        CustomerSearchIndex.Key last = keys.get(keys.size() - 1);
+        String nextCursor = hasNext ? CustomerCursor.encode(new CustomerCursor.Position(last.id(), last.value())) : null;
+        return new CustomerSlice<>(content, content.size(), hasNext, nextCursor, null);
     }
 
-    public List<Customer> getCustomers() {
-        return customerRepository.findAllCustomers();
+    /**
+     * Streams all customers through a database cursor, handing them one by one
+     * to the given consumer. The persistence context is cleared periodically,
+     * so memory usage does not depend on the number of exported customers.
+     *
+     * @return number of exported customers
+     */
+    @Transactional(readOnly = true)
+    public long exportCustomers(Consumer<Customer> consumer) {
+        return customerRepository.forEachCustomer(consumer);
     }
 
+    /**
+     * Delta export: streams PESEL numbers of customers deleted since the given time, then
+     * customers changed since then, and finally customers whose only change since then
+     * was to their contacts. Each query is served by an index on UPDATED_AT.
+     * <p>
+     * Changes are stamped when written, not at commit, so a transaction committed after an export
+     * may carry a time before its start. Callers pass the start of their previous export minus an
+     * overlap longer than any write transaction, as {@code customers.snapshot.replay-overlap} does.
+     *
+     * @return number of exported customers and deletions
+     */
+    @Transactional(readOnly = true)
+    public long exportCustomers(Instant modifiedSince, Consumer<Customer> consumer, Consumer<String> deleted) {
+        long exported = 0;
+        try (Stream<String> peselNumbers = changeLogRepository.streamDeletedSince(modifiedSince)) {
+            Iterator<String> iterator = peselNumbers.iterator();
+            while (iterator.hasNext()) {
+                deleted.accept(iterator.next());
+                exported++;
+            }
+        }
+        return exported + customerRepository.forEachCustomerModifiedSince(modifiedSince, consumer);
+    }
+
+    public long countCustomers() {
+        return customerRepository.count();
+    }
+
+    @Transactional
     public Optional<Customer> addCustomer(Customer customer) {
-        Optional<Customer> existedCustomer = getCustomerByPeselNum(customer.getPeselNumber());
+        Optional<Customer> existedCustomer = findByPeselNum(customer.getPeselNumber());
         if (existedCustomer.isPresent()) {
             return Optional.empty();
         }
-        return Optional.of(customerRepository.save(customer));
+        Customer savedCustomer = customerRepository.save(customer);
+        eventPublisher.publishEvent(CustomersChangedEvent.of(CustomersChangedEvent.Change.ADDED, savedCustomer));
+        return Optional.of(savedCustomer);
+    }
+
+    /**
+     * Adds many customers at once. Existing PESEL numbers are found with a single query
+     * and the remaining customers are written with JDBC batch inserts.
+     *
+     * @return customers which were added; the others already existed
+     */
+    @Transactional
+    public List<Customer> addCustomers(List<Customer> customers) {
+        List<String> peselNumbers = customers.stream().map(Customer::getPeselNumber).toList();
+        Set<String> existing = new HashSet<>(customerRepository.findExistingPeselNumbers(peselNumbers));
+
+        List<Customer> newCustomers = new ArrayList<>();
+        for (Customer customer : customers) {
+            if (existing.add(customer.getPeselNumber())) {
+                newCustomers.add(customer);
+            }
+        }
+        customerBatchRepository.insertAll(newCustomers);
+        if (!newCustomers.isEmpty()) {
+            eventPublisher.publishEvent(new CustomersChangedEvent(CustomersChangedEvent.Change.ADDED, newCustomers));
+        }
+        return newCustomers;
     }
 
-    public Optional<Customer> getCustomerByPeselNum(String peselNum) {
-        return findByPeselNum(peselNum);
+    public Optional<CustomerDetails> getCustomerByPeselNum(String peselNum) {
+        if (!PeselNumber.isValid(peselNum)) {
+            return Optional.empty();
+        }
+        if (customerReadModel.isReady()) {
+            return customerReadModel.find(peselNum);
+        }
+        return customerCache.get(peselNum, customerRepository::findCustomerDetailsByPeselNum);
     }
 
+    @Transactional
     public Optional<Customer> addContact(String peselNumber, CommunicationMethods contact) {
-        Optional<Customer> customer = customerRepository.findCustomerByPeselNum(peselNumber);
+        Optional<Customer> customer = findByPeselNum(peselNumber);
 
         return customer.map(c -> {
             c.setContacts(contact);
-            return customerRepository.save(c);
+            Customer savedCustomer = customerRepository.save(c);
+            eventPublisher.publishEvent(CustomersChangedEvent.of(CustomersChangedEvent.Change.UPDATED, savedCustomer));
+            return savedCustomer;
         });
     }
 
@@ -66,13 +271,21 @@ public class CustomerService {
         Optional<Customer> customerToDelete = findByPeselNum(peselNum);
         customerToDelete.ifPresent(customerRepository::delete);
         if (customerToDelete.isPresent()) {
+            eventPublisher.publishEvent(
+                    CustomersChangedEvent.of(CustomersChangedEvent.Change.DELETED, customerToDelete.get()));
             return true;
         }
 
         return false;
     }
 
+    /**
+     * PESEL numbers are stored packed into numbers, other strings cannot match any customer.
+     */
     private Optional<Customer> findByPeselNum(String peselNum) {
+        if (!PeselNumber.isValid(peselNum)) {
+            return Optional.empty();
+        }
         return customerRepository.findCustomerByPeselNum(peselNum);
     }
 
@@ -86,7 +299,7 @@ public class CustomerService {
         if (!peselNumber.equals(customerRequest.getPeselNumber())) {
             throw new IllegalArgumentException("Figa z makiem");
         }
-        Optional<Customer> customer = customerRepository.findCustomerByPeselNum(peselNumber);
+        Optional<Customer> customer = findByPeselNum(peselNumber);
         if (customer.isEmpty()) {
             return Optional.empty();
         }
@@ -94,6 +307,7 @@ public class CustomerService {
         customerEdited.setName(customerRequest.getName());
         customerEdited.setSurname(customerRequest.getSurname());
         customerEdited.setPeselNumber(customerRequest.getPeselNumber());
+        eventPublisher.publishEvent(CustomersChangedEvent.of(CustomersChangedEvent.Change.UPDATED, customerEdited));
         return Optional.of(customerEdited);
     }
 }
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CustomerSlice<T>(List<T> content,
+                               int size,
+                               boolean hasNext,
+                               String nextCursor,
+                               Long totalElements) {
+}
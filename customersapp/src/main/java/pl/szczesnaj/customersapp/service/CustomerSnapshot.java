@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import pl.szczesnaj.customersapp.model.CustomerDetails;
+import pl.szczesnaj.customersapp.model.PeselNumber;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable set of customers keyed by packed PESEL number, held outside the heap in two buffers:
+ * <ul>
+ *     <li>rows: for each customer its id, birth date, name, surname and contacts, strings as UTF-8
+ *     prefixed with their length,</li>
+ *     <li>index: an open addressing hash table of {@link PeselNumber#pack packed PESEL numbers} with
+ *     linear probing, each slot holding the key and the offset of its row.</li>
+ * </ul>
+ * A customer takes about 60 bytes plus the UTF-8 length of its strings, none of them on the heap.
+ * Lookups probe the index and decode a single row, allocating the returned customer and one
+ * array holding the bytes of its strings.
+ */
+final class CustomerSnapshot {
+    static final CustomerSnapshot EMPTY = new Builder().build();
+
+    private static final long EMPTY_SLOT = -1;
+    private static final int SLOT_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int NO_BIRTH_DATE = Integer.MIN_VALUE;
+    private static final int HAS_CONTACTS = 1;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final ByteBuffer rows;
+    private final ByteBuffer index;
+    private final int slotMask;
+    private final int size;
+
+    private CustomerSnapshot(ByteBuffer rows, ByteBuffer index, int size) {
+        this.rows = rows.asReadOnlyBuffer();
+        this.index = index.asReadOnlyBuffer();
+        this.slotMask = index.capacity() / SLOT_SIZE - 1;
+        this.size = size;
+    }
+
+    /**
+     * Snapshot over buffers of an earlier snapshot, e.g. mapped from a file.
+     *
+     * @throws IllegalArgumentException when the index is not a valid hash table
+     */
+    static CustomerSnapshot of(ByteBuffer rows, ByteBuffer index, int size) {
+        int slots = index.capacity() / SLOT_SIZE;
+        if (index.capacity() % SLOT_SIZE != 0 || Integer.bitCount(slots) != 1 || size >= slots) {
+            throw new IllegalArgumentException("Invalid snapshot index of " + index.capacity() + " bytes");
+        }
+        return new CustomerSnapshot(rows, index, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    ByteBuffer rows() {
+        return rows.duplicate().clear();
+    }
+
+    ByteBuffer index() {
+        return index.duplicate().clear();
+    }
+
+    /**
+     * Bytes held outside the heap by rows and index.
+     */
+    long memoryUsed() {
+        return (long) rows.capacity() + index.capacity();
+    }
+
+    /**
+     * @param peselNumber valid PESEL number, returned as is in the customer
+     */
+    Optional<CustomerDetails> find(String peselNumber) {
+        int offset = rowOffset(PeselNumber.pack(peselNumber));
+        return offset < 0 ? Optional.empty() : Optional.of(readRow(offset, peselNumber));
+    }
+
+    boolean contains(long packedPesel) {
+        return rowOffset(packedPesel) >= 0;
+    }
+
+    /**
+     * Passes packed PESEL numbers with their customers to the consumer, in no particular order.
+     */
+    void forEach(BiConsumer<Long, CustomerDetails> consumer) {
+        for (int slot = 0; slot <= slotMask; slot++) {
+            long key = index.getLong(slot * SLOT_SIZE);
+            if (key != EMPTY_SLOT) {
+                consumer.accept(key, readRow(index.getInt(slot * SLOT_SIZE + Long.BYTES), PeselNumber.unpack(key)));
+            }
+        }
+    }
+
+    private int rowOffset(long packedPesel) {
+        int slot = slotOf(packedPesel, slotMask);
+        while (true) {
+            long key = index.getLong(slot * SLOT_SIZE);
+            if (key == packedPesel) {
+                return index.getInt(slot * SLOT_SIZE + Long.BYTES);
+            }
+            if (key == EMPTY_SLOT) {
+                return -1;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private CustomerDetails readRow(int offset, String peselNumber) {
+        long id = rows.getLong(offset);
+        int birthDay = rows.getInt(offset + Long.BYTES);
+        byte flags = rows.get(offset + Long.BYTES + Integer.BYTES);
+        int stringsStart = offset + Long.BYTES + Integer.BYTES + 1;
+        int stringsEnd = stringsStart;
+        for (int i = (flags & HAS_CONTACTS) != 0 ? 7 : 2; i > 0; i--) {
+            stringsEnd = nextString(stringsEnd);
+        }
+        // one copy per lookup, nothing kept per thread: request threads may be short-lived virtual threads
+        byte[] strings = new byte[stringsEnd - stringsStart];
+        rows.get(stringsStart, strings);
+
+        String name = readString(strings, 0);
+        int position = nextString(strings, 0);
+        String surname = readString(strings, position);
+        position = nextString(strings, position);
+        CustomerDetails.Contacts contacts = null;
+        if ((flags & HAS_CONTACTS) != 0) {
+            String emailAddress = readString(strings, position);
+            position = nextString(strings, position);
+            String residenceAddress = readString(strings, position);
+            position = nextString(strings, position);
+            String registeredAddress = readString(strings, position);
+            position = nextString(strings, position);
+            String privatePhoneNumber = readString(strings, position);
+            position = nextString(strings, position);
+            contacts = new CustomerDetails.Contacts(emailAddress, residenceAddress, registeredAddress,
+                    privatePhoneNumber, readString(strings, position));
+        }
+        return new CustomerDetails(id, peselNumber, birthDay == NO_BIRTH_DATE ? null : LocalDate.ofEpochDay(birthDay),
+                name, surname, contacts);
+    }
+
+    private int nextString(int position) {
+        return position + Short.BYTES + Math.max(0, Short.toUnsignedInt(rows.getShort(position)) - 1);
+    }
+
+    /**
+     * Reads a string written by {@link Builder#writeString}, length 0 standing for null and
+     * length 1 for the empty string.
+     */
+    private static String readString(byte[] strings, int position) {
+        int length = stringLength(strings, position);
+        return length == 0 ? null : new String(strings, position + Short.BYTES, length - 1, StandardCharsets.UTF_8);
+    }
+
+    private static int nextString(byte[] strings, int position) {
+        return position + Short.BYTES + Math.max(0, stringLength(strings, position) - 1);
+    }
+
+    private static int stringLength(byte[] strings, int position) {
+        // big-endian, as written by ByteBuffer.putShort
+        return (strings[position] & 0xFF) << 8 | strings[position + 1] & 0xFF;
+    }
+
+    private static int slotOf(long key, int slotMask) {
+        // murmur3 finalizer, consecutive PESEL numbers of one birth date must not cluster
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & slotMask;
+    }
+
+    /**
+     * Collects rows in a growing off-heap buffer, then builds the index over them.
+     * Adding a PESEL number twice keeps the last row.
+     */
+    static final class Builder {
+        private static final int INITIAL_ROWS_CAPACITY = 64 * 1024;
+        private static final double MAX_LOAD = 0.6;
+
+        private ByteBuffer rows = ByteBuffer.allocateDirect(INITIAL_ROWS_CAPACITY);
+        private long[] keys = new long[1024];
+        private int[] offsets = new int[1024];
+        private int count;
+
+        Builder add(long packedPesel, CustomerDetails customer) {
+            CustomerDetails.Contacts contacts = customer.contacts();
+            int offset = rows.position();
+            ensureRowsCapacity(Long.BYTES + Integer.BYTES + 1);
+            rows.putLong(customer.id());
+            rows.putInt(customer.birthDate() == null ? NO_BIRTH_DATE : (int) customer.birthDate().toEpochDay());
+            rows.put((byte) (contacts == null ? 0 : HAS_CONTACTS));
+            writeString(customer.name());
+            writeString(customer.surname());
+            if (contacts != null) {
+                writeString(contacts.emailAddress());
+                writeString(contacts.residenceAddress());
+                writeString(contacts.registeredAddress());
+                writeString(contacts.privatePhoneNumber());
+                writeString(contacts.businessPhoneNumber());
+            }
+
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            keys[count] = packedPesel;
+            offsets[count] = offset;
+            count++;
+            return this;
+        }
+
+        CustomerSnapshot build() {
+            int slots = Integer.highestOneBit(Math.max(16, (int) (count / MAX_LOAD) + 1) - 1) << 1;
+            int slotMask = slots - 1;
+            ByteBuffer index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+            for (int slot = 0; slot < slots; slot++) {
+                index.putLong(slot * SLOT_SIZE, EMPTY_SLOT);
+            }
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                int slot = slotOf(keys[i], slotMask);
+                long key;
+                while ((key = index.getLong(slot * SLOT_SIZE)) != EMPTY_SLOT && key != keys[i]) {
+                    slot = (slot + 1) & slotMask;
+                }
+                if (key == EMPTY_SLOT) {
+                    index.putLong(slot * SLOT_SIZE, keys[i]);
+                    size++;
+                }
+                index.putInt(slot * SLOT_SIZE + Long.BYTES, offsets[i]);
+            }
+
+            ByteBuffer packedRows = ByteBuffer.allocateDirect(Math.max(1, rows.position()));
+            packedRows.put(rows.flip()).clear();
+            rows = null;
+            keys = null;
+            offsets = null;
+            return new CustomerSnapshot(packedRows, index, size);
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                ensureRowsCapacity(Short.BYTES);
+                rows.putShort((short) 0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= MAX_STRING_BYTES) {
+                throw new IllegalArgumentException("Value too long for a snapshot row: " + bytes.length + " bytes");
+            }
+            ensureRowsCapacity(Short.BYTES + bytes.length);
+            rows.putShort((short) (bytes.length + 1));
+            rows.put(bytes);
+        }
+
+        private void ensureRowsCapacity(int bytes) {
+            if (rows.remaining() >= bytes) {
+                return;
+            }
+            long required = (long) rows.position() + bytes;
+            if (required > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Snapshot rows exceed 2 GB");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE,
+                    Math.max(required, (long) rows.capacity() * 2)));
+            grown.put(rows.flip());
+            rows = grown;
+        }
+    }
+}
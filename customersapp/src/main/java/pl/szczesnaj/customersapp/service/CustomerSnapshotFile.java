@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * {@link CustomerSnapshot} saved to a file, with the last change log sequence number and the
+ * time of the state it holds. The file is a header followed by the index and the rows as they
+ * are in memory, so reading it only maps them; pages are loaded by the first lookups touching them.
+ * <p>
+ * Header: magic, format version, sequence number, save time in epoch milliseconds, number of
+ * customers, then the lengths of the index and the rows.
+ */
+record CustomerSnapshotFile(CustomerSnapshot snapshot, long sequence, Instant savedAt) {
+    private static final int MAGIC = 0x43534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Writes to a temporary file first and moves it over the target, so a crash never leaves
+     * a partially written snapshot behind.
+     */
+    void write(Path file) throws IOException {
+        ByteBuffer index = snapshot.index();
+        ByteBuffer rows = snapshot.rows();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(sequence)
+                .putLong(savedAt.toEpochMilli())
+                .putInt(snapshot.size())
+                .putLong(index.capacity())
+                .putLong(rows.capacity())
+                .clear();
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                for (ByteBuffer buffer : new ByteBuffer[]{header, index, rows}) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @throws IOException when the file cannot be read or is not a snapshot of the current version
+     */
+    static CustomerSnapshotFile read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a customer snapshot: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a customer snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Customer snapshot version " + version + " is not supported: " + file);
+            }
+            long sequence = header.getLong();
+            Instant savedAt = Instant.ofEpochMilli(header.getLong());
+            int size = header.getInt();
+            long indexBytes = header.getLong();
+            long rowsBytes = header.getLong();
+            if (size < 0 || indexBytes < 0 || indexBytes > Integer.MAX_VALUE
+                    || rowsBytes < 0 || rowsBytes > Integer.MAX_VALUE
+                    || channel.size() != HEADER_SIZE + indexBytes + rowsBytes) {
+                throw new IOException("Customer snapshot is truncated or corrupt: " + file);
+            }
+
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexBytes);
+            MappedByteBuffer rows = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + indexBytes, rowsBytes);
+            try {
+                return new CustomerSnapshotFile(CustomerSnapshot.of(rows, index, size), sequence, savedAt);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Customer snapshot is corrupt: " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria queries behind customer lists sorted by a {@link CustomerOrder}.
+ */
+final class CustomerSpecifications {
+
+    private CustomerSpecifications() {
+    }
+
+    /**
+     * Customers limited by the filter. Contacts are joined only when filtered on, reusing
+     * the join of a projection which selects them.
+     */
+    static Specification<Customer> matching(CustomerFilter filter) {
+        return (root, query, cb) -> {
+            if (filter.hasEmail() == null && filter.hasBusinessPhone() == null) {
+                return null;
+            }
+            Join<Customer, ?> contacts = root.getJoins().stream()
+                    .filter(join -> join.getAttribute().getName().equals("contacts"))
+                    .findFirst()
+                    .orElseGet(() -> root.join("contacts", JoinType.LEFT));
+
+            List<Predicate> predicates = new ArrayList<>();
+            if (filter.hasEmail() != null) {
+                predicates.add(present(cb, contacts.get("emailAddress"), filter.hasEmail()));
+            }
+            if (filter.hasBusinessPhone() != null) {
+                predicates.add(present(cb, contacts.get("businessPhoneNumber"), filter.hasBusinessPhone()));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Customers following the cursor position in the given order. Nulls, possible only for
+     * the birth date, come first in ascending and last in descending order, as in MySQL.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Specification<Customer> after(CustomerOrder order, Sort.Direction direction, CustomerCursor.Position after) {
+        return (root, query, cb) -> {
+            boolean ascending = direction != Sort.Direction.DESC;
+            Expression<Long> id = root.get(CustomerOrder.ID.getProperty());
+            Predicate nextId = ascending ? cb.gt(id, after.id()) : cb.lt(id, after.id());
+            if (order == CustomerOrder.ID) {
+                return nextId;
+            }
+
+            Expression<Comparable> column = root.get(order.getProperty());
+            Comparable value = order.parseCursorValue(after.value());
+            if (value == null) {
+                return ascending
+                        ? cb.or(cb.and(cb.isNull(column), nextId), cb.isNotNull(column))
+                        : cb.and(cb.isNull(column), nextId);
+            }
+            // the redundant bound lets the database seek the (column, id) index
+            Predicate seek = ascending
+                    ? cb.and(cb.greaterThanOrEqualTo(column, value),
+                    cb.or(cb.greaterThan(column, value), nextId))
+                    : cb.and(cb.lessThanOrEqualTo(column, value),
+                    cb.or(cb.lessThan(column, value), nextId));
+            return ascending ? seek : cb.or(seek, cb.isNull(column));
+        };
+    }
+
+    private static Predicate present(CriteriaBuilder cb, Expression<String> contact, boolean present) {
+        return present ? cb.isNotNull(contact) : cb.isNull(contact);
+    }
+}
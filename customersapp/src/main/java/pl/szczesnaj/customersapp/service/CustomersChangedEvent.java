@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp.service;
+
+import pl.szczesnaj.customersapp.model.Customer;
+
+import java.util.List;
+
+/**
+ * Published by {@link CustomerService} for every successful write. Listeners interested
+ * only in committed data should use {@code @TransactionalEventListener}.
+ */
+public record CustomersChangedEvent(Change change, List<Customer> customers) {
+
+    public enum Change {
+        ADDED,
+        UPDATED,
+        DELETED
+    }
+
+    static CustomersChangedEvent of(Change change, Customer customer) {
+        return new CustomersChangedEvent(change, List.of(customer));
+    }
+}
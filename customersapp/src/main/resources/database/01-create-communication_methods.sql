@@ -1,11 +1,11 @@
 --liquibase formatted sql
 --changeset szczesnaj:1
-CREATE TABLE CUSTOMER
+CREATE TABLE COMMUNICATION_METHODS
 (
     id      BIGINT AUTO_INCREMENT  PRIMARY KEY,
-    EMAIL   VARCHAR(40),
+    EMAIL_ADDRESS   VARCHAR(40),
     RESIDENCE_ADDRESS VARCHAR(150),
     REGISTERED_ADDRESS VARCHAR(150),
-    PRIVATE_PHONE VARCHAR(11),
-    BUSINESS_PHONE VARCHAR(11)
+    PRIVATE_PHONE_NUMBER VARCHAR(11),
+    BUSINESS_PHONE_NUMBER VARCHAR(11)
 );
@@ -0,0 +1,4 @@
+--liquibase formatted sql
+--changeset szczesnaj:3
+CREATE UNIQUE INDEX UX_CUSTOMER_PESEL ON CUSTOMER (PESEL);
+--rollback DROP INDEX UX_CUSTOMER_PESEL ON CUSTOMER;
@@ -0,0 +1,4 @@
+--liquibase formatted sql
+--changeset szczesnaj:4
+ALTER TABLE CUSTOMER ADD BIRTH_DATE DATE;
+--rollback ALTER TABLE CUSTOMER DROP COLUMN BIRTH_DATE;
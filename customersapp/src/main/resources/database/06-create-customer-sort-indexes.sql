@@ -0,0 +1,10 @@
+--liquibase formatted sql
+--changeset szczesnaj:6
+CREATE INDEX IX_CUSTOMER_SURNAME_ID ON CUSTOMER (SURNAME, ID);
+--rollback DROP INDEX IX_CUSTOMER_SURNAME_ID ON CUSTOMER;
+--changeset szczesnaj:7
+CREATE INDEX IX_CUSTOMER_NAME_ID ON CUSTOMER (NAME, ID);
+--rollback DROP INDEX IX_CUSTOMER_NAME_ID ON CUSTOMER;
+--changeset szczesnaj:8
+CREATE INDEX IX_CUSTOMER_BIRTH_DATE_ID ON CUSTOMER (BIRTH_DATE, ID);
+--rollback DROP INDEX IX_CUSTOMER_BIRTH_DATE_ID ON CUSTOMER;
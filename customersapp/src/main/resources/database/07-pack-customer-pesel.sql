@@ -0,0 +1,5 @@
+--liquibase formatted sql
+--changeset szczesnaj:9
+ALTER TABLE CUSTOMER MODIFY PESEL BIGINT NOT NULL;
+--rollback ALTER TABLE CUSTOMER MODIFY PESEL VARCHAR(11) NOT NULL;
+--rollback UPDATE CUSTOMER SET PESEL = LPAD(PESEL, 11, '0');
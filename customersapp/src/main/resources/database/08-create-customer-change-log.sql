@@ -0,0 +1,12 @@
+--liquibase formatted sql
+--changeset szczesnaj:10
+CREATE TABLE CUSTOMER_CHANGE_LOG
+(
+    SEQ     BIGINT AUTO_INCREMENT  PRIMARY KEY,
+    CUSTOMER_ID BIGINT NOT NULL,
+    PESEL   BIGINT NOT NULL,
+    CHANGE_TYPE VARCHAR(10) NOT NULL,
+    CHANGED_AT TIMESTAMP(3) NOT NULL
+);
+CREATE INDEX IX_CUSTOMER_CHANGE_LOG_CHANGED_AT ON CUSTOMER_CHANGE_LOG (CHANGED_AT);
+--rollback DROP TABLE CUSTOMER_CHANGE_LOG;
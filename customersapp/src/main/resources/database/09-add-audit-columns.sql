@@ -0,0 +1,15 @@
+--liquibase formatted sql
+--changeset szczesnaj:11
+ALTER TABLE CUSTOMER ADD CREATED_AT TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
+ALTER TABLE CUSTOMER ADD UPDATED_AT TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
+ALTER TABLE COMMUNICATION_METHODS ADD CREATED_AT TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
+ALTER TABLE COMMUNICATION_METHODS ADD UPDATED_AT TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
+--rollback ALTER TABLE COMMUNICATION_METHODS DROP COLUMN UPDATED_AT;
+--rollback ALTER TABLE COMMUNICATION_METHODS DROP COLUMN CREATED_AT;
+--rollback ALTER TABLE CUSTOMER DROP COLUMN UPDATED_AT;
+--rollback ALTER TABLE CUSTOMER DROP COLUMN CREATED_AT;
+--changeset szczesnaj:12
+CREATE INDEX IX_CUSTOMER_UPDATED_AT ON CUSTOMER (UPDATED_AT);
+CREATE INDEX IX_COMMUNICATION_METHODS_UPDATED_AT ON COMMUNICATION_METHODS (UPDATED_AT);
+--rollback DROP INDEX IX_CUSTOMER_UPDATED_AT ON CUSTOMER;
+--rollback DROP INDEX IX_COMMUNICATION_METHODS_UPDATED_AT ON COMMUNICATION_METHODS;
@@ -5,20 +5,57 @@
 
 package pl.szczesnaj.customersapp;
 
+import com.github.luben.zstd.ZstdInputStream;
 import io.restassured.RestAssured;
+import io.restassured.config.DecoderConfig;
 import io.restassured.http.ContentType;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import pl.szczesnaj.customersapp.export.CustomerColumnarReader;
+import pl.szczesnaj.customersapp.model.Customer;
+import pl.szczesnaj.customersapp.service.CustomerService;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static io.restassured.RestAssured.given;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.hamcrest.Matchers.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@AutoConfigureObservability(tracing = false)
 class CustomersappApplicationTests {
 
     private static String baseUri;
@@ -32,6 +69,9 @@ class CustomersappApplicationTests {
     private static final String CUSTOMERS_ENDPOINT_PATH = "/customers";
     private static final String CUSTOMERS_VALID_PESEL_ENDPOINT_PATH = "/customers/11111111111";
     private static final String CUSTOMERS_INVALID_PESEL_ENDPOINT_PATH = "/customers/21111111111";
+    private static final String CUSTOMERS_EXPORT_ENDPOINT_PATH = "/customers/export";
+    private static final String CSV_HEADER_LINE = "Name,Surname,PESEL number,Email,Residence Address,"
+            + "Registered Address,Private Phone Number,Business Phone Number";
     private static final String CUSTOMER_1_REQUEST_BODY =
             makeCustomerRequestBody(VALID_PESEL, NAME_1, SURNAME_1);
 
@@ -52,6 +92,41 @@ class CustomersappApplicationTests {
                 }""".formatted(pesel, name, surname);
     }
 
+    /**
+     * Adds {@value #VALID_PESEL} ({@value #NAME_1} {@value #SURNAME_1}) and 22222222222
+     * ({@value #NAME_2} {@value #SURNAME_2}), without contacts.
+     */
+    private static void addTwoCustomers() {
+        given().body(CUSTOMER_1_REQUEST_BODY)
+                .contentType(ContentType.JSON)
+                .when()
+                .post(CUSTOMERS_ENDPOINT_PATH);
+        given().body(makeCustomerRequestBody("22222222222", NAME_2, SURNAME_2))
+                .contentType(ContentType.JSON)
+                .when()
+                .post(CUSTOMERS_ENDPOINT_PATH);
+    }
+
+    /**
+     * Adds {@value #NAME_1} {@value #SURNAME_1} under each PESEL number in one NDJSON batch,
+     * with an e-mail address made of the PESEL number and a private phone number.
+     */
+    private static void postBatch(String... pesels) {
+        StringBuilder customers = new StringBuilder();
+        for (String pesel : pesels) {
+            customers.append("""
+                    {"peselNumber": "%s", "name": "%s", "surname": "%s",
+                     "contacts": {"emailAddress": "izabela%s@example.com", "privatePhoneNumber": "500600700"}}
+                    """.formatted(pesel, NAME_1, SURNAME_1, pesel));
+        }
+        given().body(customers.toString().getBytes(StandardCharsets.UTF_8))
+                .contentType("application/x-ndjson")
+                .when().post("/customers/batch")
+                .then()
+                .assertThat().statusCode(200)
+                .and().body("created", is(pesels.length));
+    }
+
     @Nested
     class AddCustomer {
 
@@ -122,6 +197,33 @@ class CustomersappApplicationTests {
                             "surname", is(SURNAME_1));
         }
 
+        @Test
+        void existedCustomerWithContacts() {
+
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+            given().body("""
+                            {
+                                "emailAddress": "izabela@example.com",
+                                "businessPhoneNumber": "987654321"
+                            }""")
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("peselNumber", is(VALID_PESEL),
+                            "birthDate", is("1911-11-11"),
+                            "contacts.emailAddress", is("izabela@example.com"),
+                            "contacts.businessPhoneNumber", is("987654321"),
+                            "contacts", not(hasKey("id")));
+        }
+
         @Test
         void nonexistentCustomer() {
 
@@ -132,6 +234,53 @@ class CustomersappApplicationTests {
                     .then()
                     .assertThat().statusCode(404);
         }
+
+        @Test
+        void peselNumberWithLeadingZeros() {
+            String pesel = "02270803628";
+            given().body(makeCustomerRequestBody(pesel, NAME_2, SURNAME_2))
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(201)
+                    .and().header("Location", endsWith("/customers/" + pesel));
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "/" + pesel)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("peselNumber", is(pesel),
+                            "birthDate", is("2002-07-08"));
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains(pesel));
+        }
+
+        @Test
+        void malformedPeselNumber() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+
+            given().when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "/1111111111a")
+                    .then()
+                    .assertThat().statusCode(404);
+            given().when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "/011111111111")
+                    .then()
+                    .assertThat().statusCode(404);
+            given().when()
+                    .delete(CUSTOMERS_ENDPOINT_PATH + "/1111111111")
+                    .then()
+                    .assertThat().statusCode(400);
+        }
     }
 
     @Nested
@@ -272,5 +421,1439 @@ class CustomersappApplicationTests {
                                     hasEntry("peselNumber", VALID_PESEL)))
                     );
         }
+        @Test
+        void leanPageOfSummaries() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_ENDPOINT_PATH);
+            given().body("""
+                            {"emailAddress": "izabela@example.com"}""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH)
+                    .then()
+                    .statusCode(200)
+                    .and().body("keySet()", containsInAnyOrder("content", "number", "size", "totalElements", "totalPages"),
+                            "content[0].keySet()", containsInAnyOrder("id", "peselNumber", "birthDate", "name", "surname"),
+                            "number", is(0),
+                            "size", is(CustomerService.PAGE_SIZE),
+                            "totalElements", is(1),
+                            "totalPages", is(1));
+        }
+    }
+
+    @Nested
+    class GetCustomersAfterCursor {
+
+        private static final String SECOND_PESEL = "22222222222";
+
+        @Test
+        void nonexistentCustomers() {
+            given().contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?limit=5")
+                    .then()
+                    .assertThat().statusCode(204);
+        }
+
+        @Test
+        void followNextCursor() {
+            addTwoCustomers();
+
+            String nextCursor = given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?limit=1")
+                    .then()
+                    .statusCode(200)
+                    .and().body("content.peselNumber", contains(VALID_PESEL),
+                            "hasNext", is(true),
+                            "totalElements", nullValue())
+                    .extract().path("nextCursor");
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?limit=1&after=" + nextCursor)
+                    .then()
+                    .statusCode(200)
+                    .and().body("content.peselNumber", contains(SECOND_PESEL),
+                            "hasNext", is(false),
+                            "nextCursor", nullValue());
+        }
+
+        @Test
+        void descendingWithTotalCount() {
+            addTwoCustomers();
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?limit=5&sort=DESC&count=true")
+                    .then()
+                    .statusCode(200)
+                    .and().body("content.peselNumber", contains(SECOND_PESEL, VALID_PESEL),
+                            "totalElements", is(2));
+        }
+
+        @Test
+        void invalidCursor() {
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?limit=5&after=not-a-cursor")
+                    .then()
+                    .statusCode(400);
+        }
+    }
+
+    @Nested
+    class SortAndFilterCustomers {
+
+        private static final String SECOND_PESEL = "22222222222";
+        private static final String THIRD_PESEL = "33333333333";
+
+        private void addCustomers() {
+            addTwoCustomers();
+            // month 33 holds no valid date, so this customer has no birth date
+            given().body(makeCustomerRequestBody(THIRD_PESEL, "Anna", "Abacka"))
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_ENDPOINT_PATH);
+            given().body("""
+                            {
+                                "emailAddress": "izabela@example.com"
+                            }""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+            given().body("""
+                            {
+                                "businessPhoneNumber": "987654321"
+                            }""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_ENDPOINT_PATH + "/" + SECOND_PESEL + "/methods");
+        }
+
+        @Test
+        void pageOrderedBySurname() {
+            addCustomers();
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?orderBy=surname")
+                    .then()
+                    .statusCode(200)
+                    .and().body("content.peselNumber", contains(THIRD_PESEL, VALID_PESEL, SECOND_PESEL),
+                            "content.birthDate", contains(nullValue(), is("1911-11-11"), is("2022-02-22")));
+        }
+
+        @Test
+        void pageOrderedByNameDescending() {
+            addCustomers();
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?orderBy=name&sort=DESC")
+                    .then()
+                    .statusCode(200)
+                    .and().body("content.peselNumber", contains(SECOND_PESEL, VALID_PESEL, THIRD_PESEL));
+        }
+
+        @Test
+        void followCursorOrderedByBirthDate() {
+            addCustomers();
+
+            assertEquals(List.of(THIRD_PESEL, VALID_PESEL, SECOND_PESEL), followCursor("ASC"));
+            assertEquals(List.of(SECOND_PESEL, VALID_PESEL, THIRD_PESEL), followCursor("DESC"));
+        }
+
+        private List<String> followCursor(String sort) {
+            List<String> pesels = new ArrayList<>();
+            String cursor = null;
+            do {
+                Response response = given()
+                        .contentType(ContentType.JSON)
+                        .when()
+                        .get(CUSTOMERS_ENDPOINT_PATH + "?limit=1&orderBy=birthDate&sort=" + sort
+                                + (cursor != null ? "&after=" + cursor : ""))
+                        .then()
+                        .statusCode(200)
+                        .extract().response();
+                pesels.addAll(response.path("content.peselNumber"));
+                cursor = response.path("nextCursor");
+            } while (cursor != null);
+            return pesels;
+        }
+
+        @Test
+        void filterByContacts() {
+            addCustomers();
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?hasEmail=true")
+                    .then()
+                    .statusCode(200)
+                    .and().body("content.peselNumber", contains(VALID_PESEL),
+                            "totalElements", is(1));
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?limit=5&count=true&hasBusinessPhone=false&orderBy=surname")
+                    .then()
+                    .statusCode(200)
+                    .and().body("content.peselNumber", contains(THIRD_PESEL, VALID_PESEL),
+                            "totalElements", is(2));
+        }
+
+        @Test
+        void noMatchingCustomers() {
+            addCustomers();
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?hasEmail=true&hasBusinessPhone=true")
+                    .then()
+                    .assertThat().statusCode(204);
+        }
+
+        @Test
+        void unsupportedOrder() {
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?orderBy=peselNumber")
+                    .then()
+                    .assertThat().statusCode(400);
+
+            given()
+                    .when()
+                    .get("/welcome?orderBy=peselNumber")
+                    .then()
+                    .assertThat().statusCode(400);
+        }
+
+        @Test
+        void welcomePageOrderedAndFiltered() {
+            addCustomers();
+
+            given()
+                    .when()
+                    .get("/welcome?orderBy=birthDate&sort=DESC&hasEmail=false")
+                    .then()
+                    .statusCode(200)
+                    .and().body(containsString("2022-02-22"),
+                            not(containsString(SURNAME_1)));
+        }
+    }
+
+    @Nested
+    class AddCustomersBatch {
+
+        private static final String BATCH_ENDPOINT_PATH = "/customers/batch";
+
+        @Test
+        void jsonArrayWithPerItemStatus() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+
+            given().body("""
+                            [
+                              {"peselNumber": "22222222222", "name": "Mieszko", "surname": "Pierwszy",
+                               "contacts": {"emailAddress": "mieszko@example.com", "privatePhoneNumber": "123456789"}},
+                              {"peselNumber": "11111111111", "name": "Izabela", "surname": "Czajkowska"},
+                              {"peselNumber": "333", "name": "Bolesław", "surname": "Chrobry"},
+                              {"peselNumber": "22222222222", "name": "Mieszko", "surname": "Drugi"}
+                            ]""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(BATCH_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("created", is(1),
+                            "rejected", is(3),
+                            "items.status", contains("CREATED", "CONFLICT", "INVALID", "CONFLICT"),
+                            "items.item", contains(0, 1, 2, 3));
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "/22222222222")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("surname", is(SURNAME_2),
+                            "contacts.emailAddress", is("mieszko@example.com"));
+        }
+
+        @Test
+        void newlineDelimitedJson() {
+            given().body("""
+                            {"peselNumber": "11111111111", "name": "Izabela", "surname": "Czajkowska"}
+                            {"peselNumber": "22222222222", "name": "Mieszko", "surname": "Pierwszy"}
+                            """.getBytes(StandardCharsets.UTF_8))
+                    .contentType("application/x-ndjson")
+                    .when()
+                    .post(BATCH_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("created", is(2),
+                            "rejected", is(0));
+
+            given()
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200);
+        }
+
+        @Test
+        void unreadableItemDoesNotStopImport() {
+            given().body("""
+                            [
+                              {"peselNumber": "11111111111", "name": ["Izabela"], "surname": "Czajkowska"},
+                              {"peselNumber": "22222222222", "name": "Mieszko", "surname": "Pierwszy"}
+                            ]""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(BATCH_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("created", is(1),
+                            "items.status", contains("INVALID", "CREATED"));
+        }
+    }
+
+    @Nested
+    class ChangeFeed {
+        private static final String CHANGES_ENDPOINT_PATH = "/customers/changes";
+
+        private HttpRequest streamRequest(String query, String lastEventId) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUri + CHANGES_ENDPOINT_PATH + query))
+                    .header("Accept", "text/event-stream");
+            if (lastEventId != null) {
+                request.header("Last-Event-ID", lastEventId);
+            }
+            return request.build();
+        }
+
+        private static List<String> readEvents(HttpResponse<Stream<String>> response, int count) {
+            try (Stream<String> lines = response.body()) {
+                return lines.filter(line -> line.startsWith("id:") || line.startsWith("data:"))
+                        .limit(count * 2L)
+                        .toList();
+            }
+        }
+
+        @Test
+        void committedChangesInOrderWithCurrentState() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH)
+                    .then().assertThat().statusCode(409);
+            given().body("""
+                            {"emailAddress": "izabela@example.com"}""")
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+            given().contentType(ContentType.JSON)
+                    .body(makeCustomerRequestBody(VALID_PESEL, NAME_2, SURNAME_2))
+                    .when().put(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH);
+            postBatch("00000000002");
+            given().when().delete(CUSTOMERS_ENDPOINT_PATH + "/00000000002");
+
+            given().when()
+                    .get(CHANGES_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.type", contains("ADDED", "UPDATED", "UPDATED", "ADDED", "DELETED"),
+                            "content.peselNumber", contains(VALID_PESEL, VALID_PESEL, VALID_PESEL,
+                                    "00000000002", "00000000002"),
+                            "content[0].customer.name", is(NAME_2),
+                            "content[0].customer.contacts.emailAddress", is("izabela@example.com"),
+                            "content[3].customer", nullValue(),
+                            "content[4].changedAt", notNullValue(),
+                            "hasNext", is(false));
+        }
+
+        @Test
+        void changesReadInBatches() {
+            postBatch("00000000001", "00000000002", "00000000003");
+
+            String cursor = given().queryParam("limit", 2)
+                    .when()
+                    .get(CHANGES_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains("00000000001", "00000000002"),
+                            "hasNext", is(true))
+                    .extract().path("nextCursor");
+            cursor = given().queryParam("since", cursor)
+                    .when()
+                    .get(CHANGES_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains("00000000003"),
+                            "hasNext", is(false))
+                    .extract().path("nextCursor");
+
+            given().queryParam("since", cursor)
+                    .when()
+                    .get(CHANGES_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(204);
+        }
+
+        @Test
+        void streamSendsBacklogAndNewChanges() throws Exception {
+            postBatch("00000000001", "00000000002");
+            int first = given().when().get(CHANGES_ENDPOINT_PATH)
+                    .then().extract().path("content[0].sequence");
+            HttpClient client = HttpClient.newHttpClient();
+
+            // reconnecting after the first change
+            List<String> resumed = readEvents(client.send(streamRequest("", String.valueOf(first)),
+                    HttpResponse.BodyHandlers.ofLines()), 1);
+            assertEquals("id:" + (first + 1), resumed.get(0));
+            assertTrue(resumed.get(1).contains("\"peselNumber\":\"00000000002\""));
+
+            CompletableFuture<HttpResponse<Stream<String>>> stream = client.sendAsync(
+                    streamRequest("?since=" + (first + 1), null), HttpResponse.BodyHandlers.ofLines());
+            postBatch("00000000003");
+            List<String> events = readEvents(stream.get(10, TimeUnit.SECONDS), 1);
+            assertTrue(events.get(1).contains("\"peselNumber\":\"00000000003\""));
+            assertTrue(events.get(1).contains("\"type\":\"ADDED\""));
+        }
+    }
+
+    @Nested
+    class ExportCustomers {
+
+        @Test
+        void headerOnlyWhenNoCustomers() {
+            given()
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().contentType(startsWith("text/csv"))
+                    .and().body(is(CSV_HEADER_LINE + "\r\n"));
+        }
+
+        @Test
+        void customersWithContacts() {
+            addTwoCustomers();
+            given().body("""
+                            {
+                                "emailAddress": "izabela@example.com",
+                                "privatePhoneNumber": "123456789"
+                            }""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+
+            given()
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body(is(CSV_HEADER_LINE + "\r\n"
+                            + "Izabela,Czajkowska,11111111111,izabela@example.com,,,123456789,\r\n"
+                            + "Mieszko,Pierwszy,22222222222,,,,,\r\n"));
+        }
+
+        @Test
+        void deltaWithChangesAndDeletionsSince() throws Exception {
+            addTwoCustomers();
+            given().body(makeCustomerRequestBody("33333333333", NAME_2, SURNAME_1))
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_ENDPOINT_PATH);
+            Thread.sleep(50);
+            Instant since = Instant.now();
+            Thread.sleep(50);
+            given().body("""
+                            {"emailAddress": "izabela@example.com"}""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+            given().when().delete(CUSTOMERS_ENDPOINT_PATH + "/22222222222");
+            given().body(makeCustomerRequestBody("44444444444", NAME_1, SURNAME_2))
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_ENDPOINT_PATH);
+
+            given().queryParam("modifiedSince", since.toString())
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body(is(CSV_HEADER_LINE + ",Deleted\r\n"
+                            + ",,22222222222,,,,,,true\r\n"
+                            + "Izabela,Pierwszy,44444444444,,,,,,\r\n"
+                            + "Izabela,Czajkowska,11111111111,izabela@example.com,,,,,\r\n"));
+            given().queryParam("modifiedSince", since.toString())
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH + "?format=ndjson")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body(startsWith("""
+                            {"peselNumber":"22222222222","deleted":true}
+                            {"""));
+            byte[] columnar = given().queryParam("modifiedSince", since.toString())
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH + "?format=columnar")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .extract().asByteArray();
+            try (CustomerColumnarReader reader = new CustomerColumnarReader(new ByteArrayInputStream(columnar))) {
+                reader.readHeader();
+                assertEquals("22222222222", reader.read().getPeselNumber());
+                assertTrue(reader.isDeleted());
+                assertEquals("44444444444", reader.read().getPeselNumber());
+                assertFalse(reader.isDeleted());
+            }
+            given().queryParam("modifiedSince", "yesterday")
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(400);
+        }
+    }
+
+    @Nested
+    class SearchCustomers {
+
+        private static final String SEARCH_ENDPOINT_PATH = "/customers/search";
+
+        private void addCustomers() {
+            given().body("""
+                            {"peselNumber": "11111111111", "name": "Izabela", "surname": "Czajkowska",
+                             "contacts": {"emailAddress": "Izabela@Example.com", "privatePhoneNumber": "123456789"}}
+                            {"peselNumber": "22222222222", "name": "Mieszko", "surname": "Czajka",
+                             "contacts": {"businessPhoneNumber": "987654321"}}
+                            {"peselNumber": "33333333333", "name": "Łucja", "surname": "Żak"}
+                            {"peselNumber": "44444444444", "name": "Izabela", "surname": "Kowalska"}
+                            """.getBytes(StandardCharsets.UTF_8))
+                    .contentType("application/x-ndjson")
+                    .when()
+                    .post("/customers/batch")
+                    .then()
+                    .assertThat().body("created", is(4));
+        }
+
+        @Test
+        void surnamePrefixIgnoringCaseAndDiacritics() {
+            addCustomers();
+
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?surname=czaj")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.surname", contains("Czajka", "Czajkowska"),
+                            "hasNext", is(false));
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?surname=zak&name=luc")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains("33333333333"));
+        }
+
+        @Test
+        void followNextCursor() {
+            addCustomers();
+
+            String nextCursor = given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?name=izabela&limit=1")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains("11111111111"),
+                            "hasNext", is(true))
+                    .extract().path("nextCursor");
+
+            given().queryParam("name", "izabela")
+                    .queryParam("limit", 1)
+                    .queryParam("after", nextCursor)
+                    .when()
+                    .get(SEARCH_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains("44444444444"),
+                            "hasNext", is(false),
+                            "nextCursor", nullValue());
+        }
+
+        @Test
+        void emailAndPhoneLookups() {
+            addCustomers();
+
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?email=izabela@example.com")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains("11111111111"),
+                            "content[0].contacts.privatePhoneNumber", is("123456789"));
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?phone=987654321")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains("22222222222"));
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?phone=987654321&surname=czajko")
+                    .then()
+                    .assertThat().statusCode(204);
+        }
+
+        @Test
+        void followsEditsAndDeletes() {
+            addCustomers();
+
+            given().body(makeCustomerRequestBody(VALID_PESEL, NAME_1, "Nowak"))
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .put(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH);
+            given().when().delete(CUSTOMERS_ENDPOINT_PATH + "/22222222222");
+
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?surname=czaj")
+                    .then()
+                    .assertThat().statusCode(204);
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?surname=now")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content.peselNumber", contains(VALID_PESEL));
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH + "?phone=987654321")
+                    .then()
+                    .assertThat().statusCode(204);
+        }
+
+        @Test
+        void noCriteria() {
+            given().when()
+                    .get(SEARCH_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(400);
+        }
+    }
+
+    @Nested
+    class ExportFormats {
+
+        private static final String NDJSON_BODY = """
+                {"id":1,"peselNumber":"11111111111","birthDate":"1911-11-11","name":"Izabela","surname":"Czajkowska",\
+                "contacts":{"id":1,"emailAddress":"izabela@example.com","residenceAddress":null,"registeredAddress":null,\
+                "privatePhoneNumber":"123456789","businessPhoneNumber":null}}
+                {"id":2,"peselNumber":"22222222222","birthDate":"2022-02-22","name":"Mieszko","surname":"Pierwszy",\
+                "contacts":null}
+                """;
+
+        private void addCustomers() {
+            addTwoCustomers();
+            given().body("""
+                            {
+                                "emailAddress": "izabela@example.com",
+                                "privatePhoneNumber": "123456789"
+                            }""")
+                    .contentType(ContentType.JSON)
+                    .when()
+                    .post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+        }
+
+        @Test
+        void ndjsonByAcceptHeader() {
+            addCustomers();
+
+            given().accept("application/x-ndjson")
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().contentType(startsWith("application/x-ndjson"))
+                    .and().header("Content-Disposition", endsWith(".ndjson"))
+                    .and().body(is(NDJSON_BODY));
+        }
+
+        @Test
+        void unsupportedAcceptHeader() {
+            given().accept("application/xml")
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(406);
+        }
+
+        @Test
+        void gzipByAcceptEncoding() throws Exception {
+            addCustomers();
+
+            byte[] body = given().header("Accept-Encoding", "br, gzip")
+                    .config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH + "?format=ndjson")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().header("Content-Encoding", is("gzip"))
+                    .and().header("Vary", containsString("Accept-Encoding"))
+                    .extract().asByteArray();
+
+            try (InputStream ndjson = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                assertEquals(NDJSON_BODY, new String(ndjson.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Test
+        void zstdByParameter() throws Exception {
+            addCustomers();
+
+            byte[] body = given()
+                    .config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH + "?format=ndjson&compression=zstd")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().header("Content-Encoding", is("zstd"))
+                    .extract().asByteArray();
+
+            try (InputStream ndjson = new ZstdInputStream(new ByteArrayInputStream(body))) {
+                assertEquals(NDJSON_BODY, new String(ndjson.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Test
+        void columnarReadsBackSameCustomers() throws Exception {
+            addCustomers();
+
+            byte[] body = given().when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH + "?format=columnar")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().contentType(is("application/vnd.customers.columnar"))
+                    .extract().asByteArray();
+
+            try (CustomerColumnarReader reader = new CustomerColumnarReader(new ByteArrayInputStream(body))) {
+                reader.readHeader();
+                Customer first = reader.read();
+                assertEquals("11111111111", first.getPeselNumber());
+                assertEquals(NAME_1, first.getName());
+                assertEquals(SURNAME_1, first.getSurname());
+                assertEquals("izabela@example.com", first.getContacts().getEmailAddress());
+                assertEquals("123456789", first.getContacts().getPrivatePhoneNumber());
+                assertNull(first.getContacts().getResidenceAddress());
+                Customer second = reader.read();
+                assertEquals("22222222222", second.getPeselNumber());
+                assertEquals(NAME_2, second.getName());
+                assertNull(second.getContacts());
+                assertNull(reader.read());
+            }
+        }
+
+        @Test
+        void unknownFormatParameter() {
+            given().when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH + "?format=xml")
+                    .then()
+                    .assertThat().statusCode(400);
+        }
+    }
+
+    @Nested
+    class ExportJobs {
+
+        private static final String EXPORTS_ENDPOINT_PATH = "/customers/exports";
+        private static final String CSV_BODY = CSV_HEADER_LINE + "\r\n"
+                + "Izabela,Czajkowska,11111111111,,,,,\r\n"
+                + "Mieszko,Pierwszy,22222222222,,,,,\r\n";
+
+        private String startExport(boolean gzip) {
+            return startExport("csv", gzip);
+        }
+
+        private String startExport(String format, boolean gzip) {
+            addTwoCustomers();
+
+            String id = given().queryParam("format", format)
+                    .queryParam("gzip", gzip)
+                    .when()
+                    .post(EXPORTS_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(202)
+                    .and().body("status", oneOf("RUNNING", "COMPLETED"),
+                            "format", is(format.toUpperCase()),
+                            "gzip", is(gzip))
+                    .extract().path("id");
+
+            await().atMost(Duration.ofSeconds(5))
+                    .until(() -> given().when().get(EXPORTS_ENDPOINT_PATH + "/" + id).path("status"),
+                            not(is("RUNNING")));
+            return id;
+        }
+
+        @Test
+        void completedJobReportsProgressAndServesFile() {
+            String id = startExport(false);
+
+            given().when()
+                    .get(EXPORTS_ENDPOINT_PATH + "/" + id)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("status", is("COMPLETED"),
+                            "exportedRows", is(2),
+                            "totalRows", is(2),
+                            "size", is(CSV_BODY.length()));
+
+            given().when()
+                    .get(EXPORTS_ENDPOINT_PATH + "/" + id + "/file")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().contentType(startsWith("text/csv"))
+                    .and().header("Accept-Ranges", is("bytes"))
+                    .and().header("Content-Disposition", endsWith(".csv\""))
+                    .and().body(is(CSV_BODY));
+        }
+
+        @Test
+        void rangeResumesDownload() {
+            String id = startExport(false);
+
+            given().header("Range", "bytes=10-")
+                    .when()
+                    .get(EXPORTS_ENDPOINT_PATH + "/" + id + "/file")
+                    .then()
+                    .assertThat().statusCode(206)
+                    .and().header("Content-Range", is("bytes 10-%d/%d".formatted(CSV_BODY.length() - 1, CSV_BODY.length())))
+                    .and().body(is(CSV_BODY.substring(10)));
+        }
+
+        @Test
+        void conditionalDownload() {
+            String id = startExport(false);
+            String fileUri = EXPORTS_ENDPOINT_PATH + "/" + id + "/file";
+
+            String lastModified = given().when()
+                    .get(fileUri)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().header("ETag", is("\"" + id + "\""))
+                    .and().header("Last-Modified", notNullValue())
+                    .extract().header("Last-Modified");
+
+            given().header("If-None-Match", "\"" + id + "\"")
+                    .when().get(fileUri)
+                    .then().assertThat().statusCode(304);
+            given().header("If-Modified-Since", lastModified)
+                    .when().get(fileUri)
+                    .then().assertThat().statusCode(304);
+        }
+
+        @Test
+        void rangeOfChangedFileServesWholeFile() {
+            String id = startExport(false);
+
+            given().header("Range", "bytes=10-")
+                    .header("If-Range", "\"other\"")
+                    .when()
+                    .get(EXPORTS_ENDPOINT_PATH + "/" + id + "/file")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body(is(CSV_BODY));
+        }
+
+        @Test
+        void unsatisfiableRange() {
+            String id = startExport(false);
+
+            given().header("Range", "bytes=1000-")
+                    .when()
+                    .get(EXPORTS_ENDPOINT_PATH + "/" + id + "/file")
+                    .then()
+                    .assertThat().statusCode(416)
+                    .and().header("Content-Range", is("bytes */" + CSV_BODY.length()));
+        }
+
+        @Test
+        void gzipCompressedFile() throws Exception {
+            String id = startExport(true);
+
+            byte[] file = given().when()
+                    .get(EXPORTS_ENDPOINT_PATH + "/" + id + "/file")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().contentType(is("application/gzip"))
+                    .and().header("Content-Disposition", endsWith(".csv.gz\""))
+                    .extract().asByteArray();
+
+            try (InputStream csv = new GZIPInputStream(new ByteArrayInputStream(file))) {
+                assertEquals(CSV_BODY, new String(csv.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Test
+        void ndjsonJob() {
+            String id = startExport("ndjson", false);
+
+            given().when()
+                    .get(EXPORTS_ENDPOINT_PATH + "/" + id + "/file")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().contentType(startsWith("application/x-ndjson"))
+                    .and().header("Content-Disposition", endsWith(".ndjson\""))
+                    .and().body(startsWith("{\"id\":1,\"peselNumber\":\"11111111111\""));
+        }
+
+        @Test
+        void deletedJobIsGone() {
+            String id = startExport(false);
+
+            given().when().delete(EXPORTS_ENDPOINT_PATH + "/" + id).then().assertThat().statusCode(204);
+            given().when().get(EXPORTS_ENDPOINT_PATH + "/" + id).then().assertThat().statusCode(404);
+            given().when().get(EXPORTS_ENDPOINT_PATH + "/" + id + "/file").then().assertThat().statusCode(404);
+        }
+    }
+
+    @Nested
+    class ImportCustomers {
+
+        private static final String IMPORT_ENDPOINT_PATH = "/customers/import";
+        private static final String CSV_BODY = CSV_HEADER_LINE + "\r\n"
+                + "Izabela,Czajkowska,11111111111,izabela@example.com,,,123456789,\r\n"
+                + "Mieszko,Pierwszy,2222,,,,,\r\n"
+                + "Mieszko,Pierwszy,22222222222,,,,,\r\n"
+                + "Izabela,Druga,11111111111,,,,,\r\n";
+
+        @Test
+        void csvBodyReportsRejectedRows() {
+            given().body(CSV_BODY.getBytes(StandardCharsets.UTF_8))
+                    .contentType("text/csv")
+                    .when()
+                    .post(IMPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("created", is(2),
+                            "rejected", is(2),
+                            "items.item", contains(3, 5),
+                            "items.status", contains("INVALID", "CONFLICT"));
+
+            given()
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body(is(CSV_HEADER_LINE + "\r\n"
+                            + "Izabela,Czajkowska,11111111111,izabela@example.com,,,123456789,\r\n"
+                            + "Mieszko,Pierwszy,22222222222,,,,,\r\n"));
+        }
+
+        @Test
+        void multipartFile() {
+            given().multiPart("file", "customers.csv", CSV_BODY.getBytes(StandardCharsets.UTF_8), "text/csv")
+                    .when()
+                    .post(IMPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("created", is(2),
+                            "rejected", is(2));
+        }
+
+        @Test
+        void unexpectedHeader() {
+            given().body("PESEL,Name\r\n11111111111,Izabela\r\n".getBytes(StandardCharsets.UTF_8))
+                    .contentType("text/csv")
+                    .when()
+                    .post(IMPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(400);
+        }
+    }
+
+    @Nested
+    class CachedCustomer {
+
+        private void addCustomer() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+        }
+
+        private void getCustomer(int expectedStatus) {
+            given().contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(expectedStatus);
+        }
+
+        @Test
+        void unknownCustomerFoundAfterAdding() {
+            getCustomer(404);
+            addCustomer();
+
+            getCustomer(200);
+        }
+
+        @Test
+        void editedCustomerNotStale() {
+            addCustomer();
+            getCustomer(200);
+
+            given().contentType(ContentType.JSON)
+                    .body(makeCustomerRequestBody(VALID_PESEL, NAME_2, SURNAME_2))
+                    .when().put(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH);
+
+            given().contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("name", is(NAME_2),
+                            "surname", is(SURNAME_2));
+        }
+
+        @Test
+        void addedContactsVisible() {
+            addCustomer();
+            getCustomer(200);
+
+            given().body("""
+                            {"emailAddress": "izabela@example.com"}""")
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods");
+
+            given().contentType(ContentType.JSON)
+                    .when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("contacts.emailAddress", is("izabela@example.com"));
+        }
+
+        @Test
+        void deletedCustomerNotFound() {
+            addCustomer();
+            getCustomer(200);
+
+            given().when().delete(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH);
+
+            getCustomer(404);
+        }
+
+        @Test
+        void secondLookupIsCacheHit() {
+            addCustomer();
+            getCustomer(200);
+            getCustomer(200);
+
+            given().when()
+                    .get("/actuator/metrics/cache.gets?tag=cache:customers&tag=result:hit")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("measurements[0].value", is(1.0f));
+        }
+    }
+
+    @Nested
+    // a context of its own, on its own port and database, as the context of the other tests stays open
+    @TestPropertySource(properties = {"customers.snapshot.enabled=true", "customers.snapshot.max-changes=2",
+            "customers.snapshot.file=" + SnapshotMode.SNAPSHOT_FILE,
+            "server.port=0", "spring.datasource.url=" + SnapshotMode.DATASOURCE_URL})
+    class SnapshotMode {
+        static final String SNAPSHOT_FILE = "build/test-snapshot/customers.snapshot";
+        static final String DATASOURCE_URL = "jdbc:h2:mem:snapshot;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+
+        private int defaultPort;
+
+        @BeforeEach
+        void useOwnPort(@LocalServerPort int port) {
+            defaultPort = RestAssured.port;
+            RestAssured.port = port;
+        }
+
+        @AfterEach
+        void restorePort() {
+            RestAssured.port = defaultPort;
+        }
+
+        private float gauge(String name) {
+            return given().when()
+                    .get("/actuator/metrics/" + name)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .extract().path("measurements[0].value");
+        }
+
+        private void awaitMerged() {
+            await().atMost(Duration.ofSeconds(5))
+                    .until(() -> gauge("customers.snapshot.changes"), is(0.0f));
+        }
+
+        @Test
+        void mergedCustomersServedWithoutQueries() {
+            postBatch("00000000001", "00000000002", "44051401458");
+            awaitMerged();
+            assertEquals(3.0f, gauge("customers.snapshot.customers"));
+
+            given().when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "/00000000001")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("peselNumber", is("00000000001"),
+                            "name", is("Izabela"),
+                            "contacts.emailAddress", is("izabela00000000001@example.com"),
+                            "contacts.residenceAddress", nullValue());
+            given().when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "/44051401458")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("birthDate", is("1944-05-14"),
+                            "contacts.privatePhoneNumber", is("500600700"));
+            given().when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(404);
+
+            given().queryParam("tag", "method:GET", "uri:/customers/{peselNum}")
+                    .when()
+                    .get("/actuator/metrics/customers.request.queries")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("measurements.find { it.statistic == 'TOTAL' }.value", is(0.0f));
+        }
+
+        @Test
+        void restartMapsSavedSnapshotAndReplaysLaterChanges() {
+            postBatch("00000000001", "00000000002");
+            awaitMerged();
+            assertTrue(Files.exists(Path.of(SNAPSHOT_FILE)));
+            // not merged, so not in the saved snapshot
+            given().contentType(ContentType.JSON)
+                    .body(makeCustomerRequestBody("00000000001", NAME_2, SURNAME_2))
+                    .when().put(CUSTOMERS_ENDPOINT_PATH + "/00000000001")
+                    .then().assertThat().statusCode(200);
+
+            // a second node on the same database, which is already migrated
+            try (ConfigurableApplicationContext restarted = new SpringApplicationBuilder(CustomersappApplication.class)
+                    .run("--server.port=0",
+                            "--spring.datasource.url=" + DATASOURCE_URL,
+                            "--spring.liquibase.enabled=false",
+                            "--customers.snapshot.enabled=true",
+                            "--customers.snapshot.file=" + SNAPSHOT_FILE,
+                            "--customers.snapshot.replay-overlap=0s")) {
+                int port = restarted.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+
+                given().port(port)
+                        .when().get(CUSTOMERS_ENDPOINT_PATH + "/00000000001")
+                        .then()
+                        .assertThat().statusCode(200)
+                        .and().body("name", is(NAME_2),
+                                "surname", is(SURNAME_2),
+                                "contacts.emailAddress", is("izabela00000000001@example.com"));
+                given().port(port)
+                        .when().get(CUSTOMERS_ENDPOINT_PATH + "/00000000002")
+                        .then()
+                        .assertThat().statusCode(200)
+                        .and().body("name", is("Izabela"));
+                given().port(port)
+                        .when().get("/actuator/metrics/customers.snapshot.changes")
+                        .then()
+                        .assertThat().statusCode(200)
+                        .and().body("measurements[0].value", is(1.0f));
+            }
+        }
+
+        @Test
+        void changesVisibleBeforeAndAfterMerge() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+            given().contentType(ContentType.JSON)
+                    .body(makeCustomerRequestBody(VALID_PESEL, "Zażółć", SURNAME_2))
+                    .when().put(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH);
+            postBatch("00000000002");
+            awaitMerged();
+
+            given().when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("name", is("Zażółć"),
+                            "surname", is(SURNAME_2),
+                            "contacts", nullValue());
+
+            given().when().delete(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH);
+
+            given().when()
+                    .get(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().statusCode(404);
+        }
+    }
+
+    @Nested
+    class Metrics {
+
+        private static final String METRICS_ENDPOINT_PATH = "/actuator/metrics/";
+
+        private void assertCount(String metric, float expected, String... tags) {
+            given().queryParam("tag", (Object[]) tags)
+                    .when()
+                    .get(METRICS_ENDPOINT_PATH + metric)
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("measurements.find { it.statistic == 'COUNT' }.value", is(expected));
+        }
+
+        @Test
+        void serviceMethodsAndEndpointsTimed() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+            given().when().get(CUSTOMERS_INVALID_PESEL_ENDPOINT_PATH);
+
+            assertCount("customers.service", 2.0f, "method:addCustomer");
+            assertCount("customers.service", 1.0f, "method:getCustomerByPeselNum");
+            assertCount("http.server.requests", 1.0f, "uri:/customers", "status:409");
+            assertCount("http.server.requests", 1.0f, "uri:/customers/{peselNum}", "status:404");
+        }
+
+        @Test
+        void exportRowsAndBytesCounted() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+            String csv = CSV_HEADER_LINE + "\r\n"
+                    + "Izabela,Czajkowska,11111111111,,,,,\r\n";
+            given().config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+                    .when()
+                    .get(CUSTOMERS_EXPORT_ENDPOINT_PATH)
+                    .then()
+                    .assertThat().body(is(csv));
+
+            assertCount("customers.export.rows", 1.0f);
+            assertCount("customers.export.bytes", csv.length());
+        }
+
+        @Test
+        void prometheusScrapeIncludesPoolAndHibernateMetrics() {
+            given().when().get(CUSTOMERS_INVALID_PESEL_ENDPOINT_PATH);
+
+            given().when()
+                    .get("/actuator/prometheus")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body(containsString("customers_service_seconds_bucket"),
+                            containsString("hikaricp_connections_active"),
+                            containsString("hibernate_query_executions_total"));
+        }
+    }
+
+    @Nested
+    class QueryCount {
+
+        private void addCustomersWithContacts(int count) {
+            postBatch(IntStream.rangeClosed(1, count).mapToObj("%011d"::formatted).toArray(String[]::new));
+        }
+
+        private void assertQueries(String method, String uri, int requests, float expected) {
+            // a streamed response reaches the client before the filter records its count
+            await().atMost(Duration.ofSeconds(5))
+                    .until(() -> recordedRequests(method, uri), is((float) requests));
+            given().queryParam("tag", "method:" + method, "uri:" + uri)
+                    .when()
+                    .get("/actuator/metrics/customers.request.queries")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("measurements.find { it.statistic == 'TOTAL' }.value", is(expected));
+        }
+
+        private float recordedRequests(String method, String uri) {
+            Response metric = given().queryParam("tag", "method:" + method, "uri:" + uri)
+                    .when()
+                    .get("/actuator/metrics/customers.request.queries");
+            return metric.statusCode() == 404
+                    ? 0.0f
+                    : metric.path("measurements.find { it.statistic == 'COUNT' }.value");
+        }
+
+        @Test
+        void customerByPeselReadOnceThenCached() {
+            addCustomersWithContacts(1);
+
+            given().when().get(CUSTOMERS_ENDPOINT_PATH + "/00000000001").then().assertThat().statusCode(200);
+            given().when().get(CUSTOMERS_ENDPOINT_PATH + "/00000000001").then().assertThat().statusCode(200);
+
+            assertQueries("GET", "/customers/{peselNum}", 2, 1.0f);
+        }
+
+        @Test
+        void addCustomerChecksDuplicateAndInserts() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH)
+                    .then().assertThat().statusCode(201);
+
+            assertQueries("POST", "/customers", 1, 2.0f);
+        }
+
+        @Test
+        void pageOfCustomersWithContactsWithoutNPlusOne() {
+            addCustomersWithContacts(CustomerService.PAGE_SIZE + 1);
+
+            given().when().get(CUSTOMERS_ENDPOINT_PATH + "?page=0").then().assertThat().statusCode(200);
+            given().when().get(CUSTOMERS_ENDPOINT_PATH + "?limit=5").then().assertThat().statusCode(200);
+            given().when().get("/welcome").then().assertThat().statusCode(200);
+
+            assertQueries("GET", "/customers", 2, 3.0f);
+            // the count of all customers comes from the query cache
+            assertQueries("GET", "/welcome", 1, 1.0f);
+        }
+
+        @Test
+        void firstPagesFromQueryCache() {
+            addCustomersWithContacts(CustomerService.PAGE_SIZE + 1);
+
+            for (int i = 0; i < 3; i++) {
+                given().when().get(CUSTOMERS_ENDPOINT_PATH + "?page=0").then().assertThat().statusCode(200);
+                given().when().get("/welcome").then().assertThat().statusCode(200);
+            }
+
+            // both pages share the count of all customers
+            assertQueries("GET", "/customers", 3, 2.0f);
+            assertQueries("GET", "/welcome", 3, 1.0f);
+            given().queryParam("tag", "result:hit")
+                    .when()
+                    .get("/actuator/metrics/hibernate.cache.query.requests")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("measurements[0].value", is(9.0f));
+        }
+
+        @Test
+        void queryCacheInvalidatedByWrites() {
+            addCustomersWithContacts(1);
+            assertListed(1);
+
+            given().body("""
+                            {"peselNumber": "00000000002", "name": "Mieszko", "surname": "Pierwszy"}
+                            """.getBytes(StandardCharsets.UTF_8))
+                    .contentType("application/x-ndjson")
+                    .when().post("/customers/batch")
+                    .then().assertThat().statusCode(200);
+            assertListed(2);
+
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH)
+                    .then().assertThat().statusCode(201);
+            assertListed(3);
+
+            given().when().delete(CUSTOMERS_ENDPOINT_PATH + "/00000000001")
+                    .then().assertThat().statusCode(204);
+            assertListed(2);
+        }
+
+        private void assertListed(int customers) {
+            given().when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?page=0")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content", hasSize(customers),
+                            "totalElements", is(customers));
+            given().when()
+                    .get(CUSTOMERS_ENDPOINT_PATH + "?limit=5&count=true")
+                    .then()
+                    .assertThat().statusCode(200)
+                    .and().body("content", hasSize(customers),
+                            "totalElements", is(customers));
+        }
+
+        @Test
+        void exportWithContactsInOneQuery() {
+            addCustomersWithContacts(3);
+
+            given().when().get(CUSTOMERS_EXPORT_ENDPOINT_PATH).then().assertThat().statusCode(200);
+
+            assertQueries("GET", "/customers/export", 1, 1.0f);
+        }
+
+        @Test
+        void bulkImportChecksDuplicatesOncePerChunk() {
+            addCustomersWithContacts(3);
+
+            assertQueries("POST", "/customers/batch", 1, 1.0f);
+        }
+
+        @Test
+        void addContactLoadsCustomerAndInsertsContacts() {
+            given().body(CUSTOMER_1_REQUEST_BODY)
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_ENDPOINT_PATH);
+
+            given().body("""
+                            {"emailAddress": "izabela@example.com"}""")
+                    .contentType(ContentType.JSON)
+                    .when().post(CUSTOMERS_VALID_PESEL_ENDPOINT_PATH + "/methods")
+                    .then().assertThat().statusCode(200);
+
+            assertQueries("POST", "/customers/{peselNum}/methods", 1, 2.0f);
+        }
+
+        @Test
+        void editCustomerLoadsAndUpdates() {
+            addCustomersWithContacts(1);
+
+            given().body(makeCustomerRequestBody("00000000001", NAME_2, SURNAME_2))
+                    .contentType(ContentType.JSON)
+                    .when().put(CUSTOMERS_ENDPOINT_PATH + "/00000000001")
+                    .then().assertThat().statusCode(200);
+
+            assertQueries("PUT", "/customers/{peselNum}", 1, 2.0f);
+        }
+
+        @Test
+        void deleteCustomerLoadsAndDeletesWithContacts() {
+            addCustomersWithContacts(1);
+
+            given().when().delete(CUSTOMERS_ENDPOINT_PATH + "/00000000001")
+                    .then().assertThat().statusCode(204);
+
+            assertQueries("DELETE", "/customers/{peselNum}", 1, 3.0f);
+        }
+
+        @Test
+        void csvImportChecksDuplicatesOncePerChunk() {
+            String csv = CSV_HEADER_LINE + "\r\n"
+                    + "Izabela,Czajkowska,00000000001,izabela@example.com,,,,\r\n"
+                    + "Mieszko,Pierwszy,00000000002,,,,,\r\n";
+
+            given().body(csv.getBytes(StandardCharsets.UTF_8))
+                    .contentType("text/csv")
+                    .when().post("/customers/import")
+                    .then().assertThat().statusCode(200);
+            given().multiPart("file", "customers.csv", csv.getBytes(StandardCharsets.UTF_8), "text/csv")
+                    .when().post("/customers/import")
+                    .then().assertThat().statusCode(200);
+
+            assertQueries("POST", "/customers/import", 2, 2.0f);
+        }
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.customersapp;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Compares request throughput and latency with virtual threads off and on.
+ * Every SQL statement is delayed to simulate the round trip to MySQL.
+ * Not part of the regular build, run it with {@code ./gradlew loadTest}.
+ */
+@Tag("load")
+class VirtualThreadsLoadTest {
+    private static final int CUSTOMERS = 2_000;
+    private static final int CLIENTS = 400;
+    private static final int REQUESTS_PER_CLIENT = 50;
+    private static final long STATEMENT_LATENCY_MILLIS = 5;
+
+    @Test
+    void compareThroughputAndLatency() throws Exception {
+        LoadResult platformThreads = run(false);
+        LoadResult virtualThreads = run(true);
+
+        System.out.printf("%-16s %10s %10s %10s %8s%n", "mode", "req/s", "p50 [ms]", "p99 [ms]", "errors");
+        System.out.println(platformThreads.format("platform"));
+        System.out.println(virtualThreads.format("virtual"));
+
+        assertThat(platformThreads.errors()).isEqualTo(0);
+        assertThat(virtualThreads.errors()).isEqualTo(0);
+    }
+
+    private LoadResult run(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                CustomersappApplication.class, SlowDatabaseConfiguration.class)
+                .run("--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + virtualThreads + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+                        "--spring.datasource.hikari.maximum-pool-size=10",
+                        "--customers.web.max-concurrent-requests=10",
+                        "--spring.cache.caffeine.spec=maximumSize=0",
+                        "--spring.jpa.show-sql=false")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            try (HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build()) {
+                seed(client, port);
+                return load(client, port);
+            }
+        }
+    }
+
+    private void seed(HttpClient client, int port) throws Exception {
+        String customers = IntStream.rangeClosed(1, CUSTOMERS)
+                .mapToObj(i -> """
+                        {"peselNumber": "%011d", "name": "Izabela", "surname": "Czajkowska"}""".formatted(i))
+                .collect(Collectors.joining("\n"));
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUri(port) + "/batch"))
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofString(customers))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        assertThat(response.statusCode()).isEqualTo(200);
+    }
+
+    private LoadResult load(HttpClient client, int port) throws Exception {
+        long[] latencies = new long[CLIENTS * REQUESTS_PER_CLIENT];
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger next = new AtomicInteger();
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                clients.submit(() -> {
+                    for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                        String pesel = "%011d".formatted(ThreadLocalRandom.current().nextInt(1, CUSTOMERS + 1));
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri(port) + "/" + pesel)).build();
+                        long requestStart = System.nanoTime();
+                        try {
+                            if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[next.getAndIncrement()] = System.nanoTime() - requestStart;
+                    }
+                    return null;
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new LoadResult(latencies.length * 1e9 / elapsed,
+                percentileMillis(latencies, 0.50),
+                percentileMillis(latencies, 0.99),
+                errors.get());
+    }
+
+    private static double percentileMillis(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    private static String baseUri(int port) {
+        return "http://localhost:" + port + "/customers";
+    }
+
+    private record LoadResult(double requestsPerSecond, double p50Millis, double p99Millis, int errors) {
+
+        String format(String mode) {
+            return "%-16s %10.0f %10.1f %10.1f %8d".formatted(mode, requestsPerSecond, p50Millis, p99Millis, errors);
+        }
+    }
+
+    @TestConfiguration(proxyBeanMethods = false)
+    static class SlowDatabaseConfiguration {
+
+        @Bean
+        static BeanPostProcessor slowDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource
+                            ? delayed(DataSource.class, dataSource)
+                            : bean;
+                }
+            };
+        }
+
+        /**
+         * Wraps JDBC objects so that every executed statement waits {@value #STATEMENT_LATENCY_MILLIS} ms
+         * while holding its connection, as it would when talking to a remote database.
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> T delayed(Class<T> type, T target) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (Statement.class.isAssignableFrom(method.getDeclaringClass())
+                        && method.getName().startsWith("execute")) {
+                    Thread.sleep(STATEMENT_LATENCY_MILLIS);
+                }
+                Object result = invoke(method, target, args);
+                if (result instanceof Connection connection) {
+                    return delayed(Connection.class, connection);
+                }
+                if (result instanceof Statement statement && method.getReturnType().isInterface()) {
+                    return delayed((Class<Statement>) method.getReturnType(), statement);
+                }
+                return result;
+            });
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -6,20 +6,50 @@
 package pl.szczesnaj;
 
 import pl.szczesnaj.generator.CustomerGenerator;
+import pl.szczesnaj.generator.DataFileFormat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
 
 public class Main {
 
     public static final int DEFAULT_CUSTOMERS_AMOUNT = 100;
+    public static final int DEFAULT_CONCURRENCY = 1;
+    public static final long DEFAULT_SEED = 1;
+    private static final String CONCURRENCY_OPTION = "--concurrency=";
+    private static final String QUIET_OPTION = "--quiet";
+    private static final String OUTPUT_OPTION = "--output=";
+    private static final String FORMAT_OPTION = "--format=";
+    private static final String WORKERS_OPTION = "--workers=";
+    private static final String SEED_OPTION = "--seed=";
+    private static final String FIRST_INDEX_OPTION = "--first-index=";
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         int customerAmount = getCustomerAmount(args);
+        int firstIndex = getOption(args, FIRST_INDEX_OPTION).map(Integer::parseInt).orElse(0);
         CustomerGenerator generator = new CustomerGenerator();
-        generator.generate(customerAmount);
+
+        Optional<String> output = getOption(args, OUTPUT_OPTION);
+        if (output.isPresent()) {
+            DataFileFormat format = getOption(args, FORMAT_OPTION)
+                    .map(f -> DataFileFormat.valueOf(f.toUpperCase()))
+                    .orElseGet(() -> DataFileFormat.fromFileName(output.get()));
+            int workers = getPositiveInt(args, WORKERS_OPTION, Runtime.getRuntime().availableProcessors());
+            long seed = getOption(args, SEED_OPTION).map(Long::parseLong).orElse(DEFAULT_SEED);
+            generator.generateFile(firstIndex, customerAmount, Path.of(output.get()), format, workers, seed);
+            return;
+        }
+
+        int concurrency = getPositiveInt(args, CONCURRENCY_OPTION, DEFAULT_CONCURRENCY);
+        boolean quiet = Arrays.asList(args).contains(QUIET_OPTION);
+        generator.generate(firstIndex, customerAmount, concurrency, quiet);
     }
 
     private static int getCustomerAmount(String[] args) {
         try {
-            if (args.length > 0) {
+            if (args.length > 0 && !args[0].startsWith("--")) {
                 return Integer.parseInt(args[0]);
             }
             return DEFAULT_CUSTOMERS_AMOUNT;
@@ -28,6 +58,20 @@ public class Main {
             return DEFAULT_CUSTOMERS_AMOUNT;
         }
     }
+
+    private static int getPositiveInt(String[] args, String option, int defaultValue) {
+        return getOption(args, option)
+                .map(Integer::parseInt)
+                .filter(value -> value > 0)
+                .orElse(defaultValue);
+    }
+
+    private static Optional<String> getOption(String[] args, String option) {
+        return Arrays.stream(args)
+                .filter(arg -> arg.startsWith(option))
+                .map(arg -> arg.substring(option.length()))
+                .findFirst();
+    }
 }
 
 
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes generated customers to a file. Customers are generated in chunks on worker threads,
+ * each chunk with its own random seeded from the chunk number, and written in order by the calling
+ * thread. At most two chunks per worker wait in memory, so the file is streamed to disk.
+ */
+class CustomerDataFileWriter {
+    static final int CHUNK_SIZE = 10_000;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    private final CustomerGenerator generator;
+    private final DataFileFormat format;
+    private final int workers;
+    private final long seed;
+
+    CustomerDataFileWriter(CustomerGenerator generator, DataFileFormat format, int workers, long seed) {
+        this.generator = generator;
+        this.format = format;
+        this.workers = workers;
+        this.seed = seed;
+    }
+
+    void write(Path output, int firstIndex, int customersNumber) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE)) {
+            write(out, firstIndex, customersNumber);
+        }
+    }
+
+    /**
+     * Writes customers with indexes from {@code firstIndex}, the customer with index i gets id i + 1.
+     */
+    void write(OutputStream out, int firstIndex, int customersNumber) throws IOException {
+        out.write(format.header().getBytes(StandardCharsets.UTF_8));
+
+        int chunks = (customersNumber + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            int nextChunk = 0;
+            while (nextChunk < chunks || !pending.isEmpty()) {
+                while (nextChunk < chunks && pending.size() < 2 * workers) {
+                    int chunk = nextChunk++;
+                    pending.add(executor.submit(() -> render(chunk, firstIndex, customersNumber)));
+                }
+                out.write(pending.remove().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating customers", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot generate customers", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private byte[] render(int chunk, int firstIndex, int customersNumber) {
+        SplittableRandom random = new SplittableRandom(seed + chunk * SEED_INCREMENT);
+        int from = firstIndex + chunk * CHUNK_SIZE;
+        int to = Math.min(from + CHUNK_SIZE, firstIndex + customersNumber);
+
+        List<GeneratedCustomer> customers = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            customers.add(generator.generateCustomer(i, random));
+        }
+        StringBuilder out = new StringBuilder(customers.size() * 200);
+        format.append(out, customers, from + 1L);
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
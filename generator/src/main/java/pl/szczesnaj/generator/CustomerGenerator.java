@@ -18,12 +18,17 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
 public class CustomerGenerator {
     public static final int MAX_NUMBER = 100;
+    private static final URI CUSTOMERS_URI = URI.create("http://localhost:8080/customers");
     private final Map<Gender, List<String>> names;
     private final Map<Gender, List<String>> surnames;
     private final List<String> allowedContactsMethods;
@@ -42,26 +47,98 @@ public class CustomerGenerator {
     }
 
     public void generate(int customersNumber) {
+        generate(0, customersNumber, 1, false);
+    }
+
+    /**
+     * Adds customers with their contacts, keeping up to {@code concurrency} customers in flight.
+     * The contacts request is sent as soon as the customer is created. Throughput and latency
+     * of all requests are printed at the end.
+     *
+     * @param firstIndex index of the first customer, runs with disjoint index ranges add different customers
+     * @param quiet      when set, nothing is printed per customer
+     */
+    public void generate(int firstIndex, int customersNumber, int concurrency, boolean quiet) {
         loadSampleNamesAndSurnamesFromFiles();
 
-        for (int i = 0; i < customersNumber; i++) {
-            String peselNum = generatePeselNumber(i);
-            Gender gender = getGenderFromPeselNumber(peselNum);
+        Semaphore inFlight = new Semaphore(concurrency);
+        RequestStatistics statistics = new RequestStatistics(2 * customersNumber);
+        for (int i = firstIndex; i < firstIndex + customersNumber; i++) {
+            GeneratedCustomer customer = generateCustomer(i, ThreadLocalRandom.current());
             final Map<String, String> person = Map.of(
-                    "peselNumber", peselNum,
-                    "name", generateName(gender),
-                    "surname", generateSurname(gender));
+                    "peselNumber", customer.peselNumber(),
+                    "name", customer.name(),
+                    "surname", customer.surname());
 
             String customerPayload = makePayload(person);
+            String contactPayload = makePayload(customer.contacts());
 
-            String location = addCustomer(customerPayload);
-            System.out.printf("Added customer: %s%n", location);
-
-            int quantity = getRandomNumber(2, 5);
-            String contactPayload = addContacts(quantity);
-            int statusCode = addContactsMethods(location, contactPayload);
-            System.out.printf("Added methods. Status Code: %s%n", statusCode);
+            inFlight.acquireUninterruptibly();
+            addCustomerWithContacts(customerPayload, contactPayload, statistics, quiet)
+                    .whenComplete((statusCode, e) -> inFlight.release());
         }
+        inFlight.acquireUninterruptibly(concurrency);
+
+        System.out.println(statistics.summary());
+    }
+
+    /**
+     * Writes customers with their contacts straight to a file instead of sending them to the app.
+     * The same seed always produces the same file, whatever the number of workers.
+     */
+    public void generateFile(int firstIndex, int customersNumber, Path output, DataFileFormat format, int workers,
+                             long seed) throws IOException {
+        loadSampleNamesAndSurnamesFromFiles();
+
+        long start = System.nanoTime();
+        new CustomerDataFileWriter(this, format, workers, seed).write(output, firstIndex, customersNumber);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Written %d customers to %s in %.1f s, %.0f customers/s%n",
+                customersNumber, output, seconds, customersNumber / seconds);
+    }
+
+    /**
+     * Draws all random values from the given generator, so a seeded generator gives repeatable customers.
+     */
+    GeneratedCustomer generateCustomer(int index, RandomGenerator random) {
+        String peselNum = generatePeselNumber(index);
+        Gender gender = getGenderFromPeselNumber(peselNum);
+        int quantity = getRandomNumber(random, 2, 5);
+        return new GeneratedCustomer(peselNum,
+                generateName(gender, random),
+                generateSurname(gender, random),
+                generateContacts(quantity, random));
+    }
+
+    private CompletableFuture<Integer> addCustomerWithContacts(String customerPayload, String contactPayload,
+                                                               RequestStatistics statistics, boolean quiet) {
+        return httpPostAsync(CUSTOMERS_URI, customerPayload, statistics)
+                .thenCompose(response -> {
+                    Optional<String> location = response.headers().firstValue("location");
+                    if (location.isEmpty()) {
+                        if (!quiet) {
+                            System.out.printf("Customer not added. Status Code: %s%n", response.statusCode());
+                        }
+                        return CompletableFuture.completedFuture(response.statusCode());
+                    }
+                    if (!quiet) {
+                        System.out.printf("Added customer: %s%n", location.get());
+                    }
+                    return addContactsMethods(location.get(), contactPayload, statistics)
+                            .thenApply(statusCode -> {
+                                if (!quiet) {
+                                    System.out.printf("Added methods. Status Code: %s%n", statusCode);
+                                }
+                                return statusCode;
+                            });
+                })
+                .exceptionally(e -> {
+                    // counted as failed in the statistics
+                    if (!quiet) {
+                        System.out.printf("Request failed: %s%n", e.getCause() != null ? e.getCause() : e);
+                    }
+                    return -1;
+                });
     }
 
     List<String> getDataFromFile(String fileName, Class<?> type) {
@@ -119,14 +196,12 @@ public class CustomerGenerator {
         return orderNumber % 2 == 0 ? Gender.FEMALE : Gender.MALE;
     }
 
-    private String addContacts(int quantity) {
-        Set<Integer> numbers = new HashSet<>();
+    private Map<String, String> generateContacts(int quantity, RandomGenerator random) {
+        Set<Integer> numbers = new TreeSet<>();
         while (numbers.size() < quantity) {
-            numbers.add(getRandomNumber(0, allowedContactsMethods.size()));
+            numbers.add(getRandomNumber(random, 0, allowedContactsMethods.size()));
         }
-        Map<String, String> methods = generateMethods(numbers);
-
-        return makePayload(methods);
+        return generateMethods(numbers, random);
     }
 
     String makePayload(Map<String, String> payload) {
@@ -142,102 +217,84 @@ public class CustomerGenerator {
                 ));
     }
 
-    private Map<String, String> generateMethods(Set<Integer> numbers) {
-        Map<String, String> methods = new HashMap<>();
+    private Map<String, String> generateMethods(Set<Integer> numbers, RandomGenerator random) {
+        Map<String, String> methods = new LinkedHashMap<>();
         List<String> methodsKey = numbers.stream().
                 map(allowedContactsMethods::get)
                 .toList();
         for (String key : methodsKey) {
             if (key.toLowerCase().contains("email")) {
-                methods.put(key, generateEmail());
+                methods.put(key, generateEmail(random));
             } else if (key.toLowerCase().contains("phone")) {
-                methods.put(key, generatePhoneNumber());
+                methods.put(key, generatePhoneNumber(random));
             } else if (key.toLowerCase().contains("address")) {
-                methods.put(key, generateAddress(key));
+                methods.put(key, generateAddress(key, random));
             }
         }
         return methods;
     }
 
-    private String generateEmail() {
-        return "customer" + getRandomNumber(0, 99999) + "@example.com";
+    private String generateEmail(RandomGenerator random) {
+        return "customer" + getRandomNumber(random, 0, 99999) + "@example.com";
     }
 
-    private int addContactsMethods(String location, String contactPayload) {
+    private CompletableFuture<Integer> addContactsMethods(String location, String contactPayload,
+                                                          RequestStatistics statistics) {
         String contactAddress = location + "/methods";
         var contactUri = URI.create(contactAddress);
 
-        return httpPost(contactUri, contactPayload).statusCode();
+        return httpPostAsync(contactUri, contactPayload, statistics)
+                .thenApply(HttpResponse::statusCode);
     }
 
+    /**
+     * @return valid PESEL number, different for every component
+     */
     String generatePeselNumber(int component) {
-        String year = String.format("%02d", getRandomNumber(0, 100));
-        String month = genMonthNum();
-        String days = String.format("%02d", getRandomNumber(1, 32));
-        String fiveControlDigits = genControlNumber(component);
-
-        return year + month + days + fiveControlDigits;
+        return PeselNumbers.of(component);
     }
 
     String generatePhoneNumber() {
-        int firstFiveDigits = getRandomNumber(10000, 99999);
-        int nextDigits = getRandomNumber(1000, 999999);
-        return "" + firstFiveDigits + nextDigits;
-    }
-
-    private String generateAddress(String type) {
-        return type + " " + UUID.randomUUID();
+        return generatePhoneNumber(ThreadLocalRandom.current());
     }
 
-    private String genMonthNum() {
-        int monthNum = getRandomNumber(1, 33);
-        if (monthNum >= 13 && monthNum <= 20) {
-            monthNum -= 10;
-        }
-        return String.format("%02d", monthNum);
+    private String generatePhoneNumber(RandomGenerator random) {
+        int firstFiveDigits = getRandomNumber(random, 10000, 99999);
+        int nextDigits = getRandomNumber(random, 1000, 999999);
+        return "" + firstFiveDigits + nextDigits;
     }
 
-    String genControlNumber(int component) {
-        if (component < 99999) {
-            return String.format("%05d", component);
-        }
-        return String.valueOf(component).substring(0, 5);
+    private String generateAddress(String type, RandomGenerator random) {
+        return type + " " + new UUID(random.nextLong(), random.nextLong());
     }
 
-    private String generateName(Gender gender) {
-        int nameNumber = getRandomNumber(0, names.get(gender).size());
+    private String generateName(Gender gender, RandomGenerator random) {
+        int nameNumber = getRandomNumber(random, 0, names.get(gender).size());
         return names
                 .get(gender)
                 .get(nameNumber);
     }
 
-    private String generateSurname(Gender gender) {
-        int surnameNumber = getRandomNumber(0, surnames.get(gender).size());
+    private String generateSurname(Gender gender, RandomGenerator random) {
+        int surnameNumber = getRandomNumber(random, 0, surnames.get(gender).size());
         return surnames
                 .get(gender)
                 .get(surnameNumber);
     }
 
-    private int getRandomNumber(int start, int bound) {
-        return ThreadLocalRandom.current().nextInt(start, bound);
-    }
-
-    private String addCustomer(String payload) {
-        var customerUri = URI.create("http://localhost:8080/customers");
-
-        return httpPost(customerUri, payload)
-                .headers().allValues("location").get(0);
+    private int getRandomNumber(RandomGenerator random, int start, int bound) {
+        return random.nextInt(start, bound);
     }
 
-    private HttpResponse<Void> httpPost(URI uri, String payload) {
+    private CompletableFuture<HttpResponse<Void>> httpPostAsync(URI uri, String payload,
+                                                                RequestStatistics statistics) {
         var request = HttpRequest.newBuilder()
                 .POST(HttpRequest.BodyPublishers.ofString(payload))
                 .header("Content-Type", "application/json")
                 .uri(uri).build();
-        try {
-            return httpClient.send(request, HttpResponse.BodyHandlers.discarding());
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) ->
+                        statistics.record(start, e == null && response.statusCode() / 100 == 2));
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.generator;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Layouts of files written by {@link CustomerDataFileWriter}, each one loadable by the customers app.
+ */
+public enum DataFileFormat {
+    /**
+     * Layout of {@code GET /customers/export}, accepted by {@code POST /customers/import}.
+     */
+    CSV {
+        @Override
+        String header() {
+            return "Name,Surname,PESEL number,Email,Residence Address,Registered Address,"
+                    + "Private Phone Number,Business Phone Number\n";
+        }
+
+        @Override
+        void append(StringBuilder out, List<GeneratedCustomer> customers, long firstId) {
+            for (GeneratedCustomer customer : customers) {
+                out.append(csv(customer.name())).append(',')
+                        .append(csv(customer.surname())).append(',')
+                        .append(customer.peselNumber());
+                for (String method : CONTACT_METHODS) {
+                    out.append(',').append(csv(customer.contacts().get(method)));
+                }
+                out.append('\n');
+            }
+        }
+    },
+    /**
+     * Newline delimited JSON, accepted by {@code POST /customers/batch}.
+     */
+    NDJSON {
+        @Override
+        void append(StringBuilder out, List<GeneratedCustomer> customers, long firstId) {
+            for (GeneratedCustomer customer : customers) {
+                out.append("{\"peselNumber\":").append(json(customer.peselNumber()))
+                        .append(",\"name\":").append(json(customer.name()))
+                        .append(",\"surname\":").append(json(customer.surname()))
+                        .append(",\"contacts\":")
+                        .append(customer.contacts().entrySet().stream()
+                                .map(e -> json(e.getKey()) + ":" + json(e.getValue()))
+                                .collect(Collectors.joining(",", "{", "}")))
+                        .append("}\n");
+            }
+        }
+    },
+    /**
+     * Multi-row inserts into CUSTOMER and COMMUNICATION_METHODS tables with explicit customer ids,
+     * PESEL numbers packed into numbers and birth dates filled as the app does.
+     */
+    SQL {
+        @Override
+        void append(StringBuilder out, List<GeneratedCustomer> customers, long firstId) {
+            for (int from = 0; from < customers.size(); from += ROWS_PER_INSERT) {
+                List<GeneratedCustomer> rows = customers.subList(from, Math.min(from + ROWS_PER_INSERT, customers.size()));
+                long id = firstId + from;
+
+                out.append("insert into CUSTOMER (ID, PESEL, NAME, SURNAME, BIRTH_DATE) values\n");
+                for (int i = 0; i < rows.size(); i++) {
+                    GeneratedCustomer customer = rows.get(i);
+                    out.append(i == 0 ? "" : ",\n")
+                            .append('(').append(id + i)
+                            .append(", ").append(Long.parseLong(customer.peselNumber()))
+                            .append(", ").append(sql(customer.name()))
+                            .append(", ").append(sql(customer.surname()))
+                            .append(", ").append(sql(PeselNumbers.birthDate(customer.peselNumber()).toString()))
+                            .append(')');
+                }
+                out.append(";\n");
+
+                out.append("insert into COMMUNICATION_METHODS (ID, EMAIL_ADDRESS, RESIDENCE_ADDRESS, "
+                        + "REGISTERED_ADDRESS, PRIVATE_PHONE_NUMBER, BUSINESS_PHONE_NUMBER) values\n");
+                for (int i = 0; i < rows.size(); i++) {
+                    Map<String, String> contacts = rows.get(i).contacts();
+                    out.append(i == 0 ? "" : ",\n").append('(').append(id + i);
+                    for (String method : CONTACT_METHODS) {
+                        out.append(", ").append(sql(contacts.get(method)));
+                    }
+                    out.append(')');
+                }
+                out.append(";\n");
+            }
+        }
+    };
+
+    private static final List<String> CONTACT_METHODS = List.of("emailAddress", "residenceAddress",
+            "registeredAddress", "privatePhoneNumber", "businessPhoneNumber");
+    private static final int ROWS_PER_INSERT = 1000;
+
+    String header() {
+        return "";
+    }
+
+    /**
+     * Appends the customers, the first one having id {@code firstId}.
+     */
+    abstract void append(StringBuilder out, List<GeneratedCustomer> customers, long firstId);
+
+    public static DataFileFormat fromFileName(String fileName) {
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+        for (DataFileFormat format : values()) {
+            if (format.name().equalsIgnoreCase(extension)) {
+                return format;
+            }
+        }
+        return CSV;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String value) {
+        return '"' + new String(JsonStringEncoder.getInstance().quoteAsString(value)) + '"';
+    }
+
+    private static String sql(String value) {
+        return value == null ? "null" : "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.generator;
+
+import java.util.Map;
+
+/**
+ * @param contacts communication methods by their JSON property name, e.g. {@code emailAddress}
+ */
+record GeneratedCustomer(String peselNumber, String name, String surname, Map<String, String> contacts) {
+}
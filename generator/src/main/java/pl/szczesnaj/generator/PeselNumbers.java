@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.generator;
+
+import java.time.LocalDate;
+
+/**
+ * Maps customer indexes to distinct, valid PESEL numbers.
+ * <p>
+ * A PESEL is a birth date (1800-2299, the century encoded in the month), a four digit serial
+ * number whose last digit gives the gender, and a check digit. Indexes are permuted over all
+ * pairs of birth date in 1900-2099 and serial number, so every index in
+ * [0, {@value #CAPACITY}) gets its own PESEL and birth dates are spread from the first index on.
+ * Parallel runs stay unique by generating disjoint index ranges.
+ */
+final class PeselNumbers {
+    private static final LocalDate FIRST_BIRTH_DATE = LocalDate.of(1900, 1, 1);
+    private static final int DAYS = 73_049;
+    private static final int SERIAL_NUMBERS = 10_000;
+    static final long CAPACITY = (long) DAYS * SERIAL_NUMBERS;
+    /**
+     * Coprime with {@link #CAPACITY} (2^4 * 5^4 * 17 * 4297), so {@code index * MULTIPLIER mod CAPACITY} is a permutation.
+     */
+    static final long MULTIPLIER = 48_271;
+    private static final long SHIFT = 123_456_789;
+    private static final int[] WEIGHTS = {1, 3, 7, 9, 1, 3, 7, 9, 1, 3};
+
+    private PeselNumbers() {
+    }
+
+    /**
+     * @throws IllegalArgumentException when the index is negative or not less than {@value #CAPACITY}
+     */
+    static String of(long index) {
+        if (index < 0 || index >= CAPACITY) {
+            throw new IllegalArgumentException("PESEL index out of range [0, " + CAPACITY + "): " + index);
+        }
+        long position = (index * MULTIPLIER + SHIFT) % CAPACITY;
+        LocalDate birthDate = FIRST_BIRTH_DATE.plusDays(position / SERIAL_NUMBERS);
+        int serialNumber = (int) (position % SERIAL_NUMBERS);
+
+        int month = birthDate.getMonthValue() + (birthDate.getYear() >= 2000 ? 20 : 0);
+        String withoutCheckDigit = "%02d%02d%02d%04d".formatted(
+                birthDate.getYear() % 100, month, birthDate.getDayOfMonth(), serialNumber);
+        return withoutCheckDigit + checkDigit(withoutCheckDigit);
+    }
+
+    /**
+     * @return birth date of a PESEL number returned by {@link #of(long)}
+     */
+    static LocalDate birthDate(String peselNumber) {
+        int month = Integer.parseInt(peselNumber.substring(2, 4));
+        return LocalDate.of((month > 20 ? 2000 : 1900) + Integer.parseInt(peselNumber.substring(0, 2)),
+                month % 20, Integer.parseInt(peselNumber.substring(4, 6)));
+    }
+
+    /**
+     * @param digits first ten digits of a PESEL number
+     */
+    static int checkDigit(String digits) {
+        int sum = 0;
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            sum += WEIGHTS[i] * (digits.charAt(i) - '0');
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024 Joanna Szczesna
+ * All rights reserved
+ */
+
+package pl.szczesnaj.generator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects latencies of HTTP requests sent by the generator and summarizes them
+ * as throughput and latency percentiles.
+ */
+class RequestStatistics {
+    private final long[] latencies;
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final LongAdder failed = new LongAdder();
+    private final long start = System.nanoTime();
+
+    RequestStatistics(int expectedRequests) {
+        this.latencies = new long[expectedRequests];
+    }
+
+    void record(long startNanos, boolean success) {
+        int index = recorded.getAndIncrement();
+        if (index < latencies.length) {
+            latencies[index] = System.nanoTime() - startNanos;
+        }
+        if (!success) {
+            failed.increment();
+        }
+    }
+
+    String summary() {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int count = Math.min(recorded.get(), latencies.length);
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return """
+                Requests: %d (failed: %d) in %.1f s, %.0f req/s
+                Latency [ms]: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f""".formatted(
+                recorded.get(), failed.sum(), seconds, recorded.get() / seconds,
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.90),
+                percentileMillis(sorted, 0.99), percentileMillis(sorted, 1.0));
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
@@ -14,9 +14,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -195,15 +202,48 @@ class CustomerGeneratorTest {
         }
 
         @Test
-        void hasFiveControlDigits() {
-            String controlNumber = String.valueOf(generator.genControlNumber(1));
-            int sizeControlNum = controlNumber.length();
+        void checkDigitOfKnownPeselNumber() {
+            assertEquals(9, PeselNumbers.checkDigit("4405140135"));
+            assertEquals(8, PeselNumbers.checkDigit("0207080362"));
+        }
+
+        @Test
+        void birthDateOfKnownPeselNumber() {
+            assertEquals(LocalDate.of(1944, 5, 14), PeselNumbers.birthDate("44051401359"));
+            assertEquals(LocalDate.of(2002, 7, 8), PeselNumbers.birthDate("02270803628"));
+        }
+
+        @Test
+        void hasValidCheckDigitAndBirthDate() {
+            for (int i = 0; i < 100_000; i += 997) {
+                String peselNumber = generator.generatePeselNumber(i);
+                int month = Integer.parseInt(peselNumber.substring(2, 4));
+                int year = (month > 20 ? 2000 : 1900) + Integer.parseInt(peselNumber.substring(0, 2));
+
+                assertEquals(PeselNumbers.checkDigit(peselNumber), peselNumber.charAt(10) - '0');
+                assertDoesNotThrow(() -> LocalDate.of(year, month % 20, Integer.parseInt(peselNumber.substring(4, 6))));
+            }
+        }
 
-            String controlNumberSecond = String.valueOf(generator.genControlNumber(150000));
-            int sizeControlNumSecond = controlNumberSecond.length();
+        @Test
+        void noDuplicatesPast99999() {
+            Set<String> peselNumbers = new HashSet<>();
+            for (int i = 0; i < 250_000; i++) {
+                peselNumbers.add(generator.generatePeselNumber(i));
+            }
 
-            assertEquals(5, sizeControlNum);
-            assertEquals(5, sizeControlNumSecond);
+            assertEquals(250_000, peselNumbers.size());
+        }
+
+        @Test
+        void multiplierIsCoprimeWithCapacity() {
+            assertEquals(BigInteger.ONE, BigInteger.valueOf(PeselNumbers.MULTIPLIER)
+                    .gcd(BigInteger.valueOf(PeselNumbers.CAPACITY)));
+        }
+
+        @Test
+        void indexOutOfRange_throws() {
+            assertThrows(IllegalArgumentException.class, () -> PeselNumbers.of(PeselNumbers.CAPACITY));
         }
     }
 
@@ -232,4 +272,56 @@ class CustomerGeneratorTest {
             assertTrue(onlyDigits);
         }
     }
+
+    @Nested
+    class DataFile {
+        private static final int CUSTOMERS = CustomerDataFileWriter.CHUNK_SIZE * 2 + 7;
+
+        @BeforeEach
+        void loadNames() {
+            generator.loadSampleNamesAndSurnamesFromFiles();
+        }
+
+        @Test
+        void sameSeed_sameFile_whateverNumberOfWorkers() throws IOException {
+            byte[] oneWorker = write(DataFileFormat.NDJSON, 1, 7);
+            byte[] fourWorkers = write(DataFileFormat.NDJSON, 4, 7);
+
+            assertArrayEquals(oneWorker, fourWorkers);
+        }
+
+        @Test
+        void csv_headerAndOneLinePerCustomer() throws IOException {
+            List<String> lines = new String(write(DataFileFormat.CSV, 2, 1), StandardCharsets.UTF_8).lines().toList();
+
+            assertThat(lines).hasSize(CUSTOMERS + 1);
+            assertThat(lines.get(0)).startsWith("Name,Surname,PESEL number,Email");
+            assertThat(lines.get(1).split(",", -1)).hasLength(8);
+        }
+
+        @Test
+        void ndjson_oneCustomerWithContactsPerLine() throws IOException {
+            List<String> lines = new String(write(DataFileFormat.NDJSON, 2, 1), StandardCharsets.UTF_8).lines().toList();
+
+            JsonNode customer = JsonMapper.builder().build().readTree(lines.get(0));
+            assertThat(lines).hasSize(CUSTOMERS);
+            assertThat(customer.get("peselNumber").asText()).hasLength(11);
+            assertThat(customer.get("contacts").size()).isIn(Range.closed(2, 4));
+        }
+
+        @Test
+        void sql_customerIdsStartAtOne() throws IOException {
+            String sql = new String(write(DataFileFormat.SQL, 2, 1), StandardCharsets.UTF_8);
+
+            assertThat(sql).startsWith("insert into CUSTOMER (ID, PESEL, NAME, SURNAME, BIRTH_DATE) values\n(1, ");
+            assertThat(sql).contains("\n(" + CUSTOMERS + ", ");
+            assertThat(sql.split("insert into COMMUNICATION_METHODS", -1)).hasLength(CUSTOMERS / 1000 + 2);
+        }
+
+        private byte[] write(DataFileFormat format, int workers, long seed) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new CustomerDataFileWriter(generator, format, workers, seed).write(out, 0, CUSTOMERS);
+            return out.toByteArray();
+        }
+    }
 }